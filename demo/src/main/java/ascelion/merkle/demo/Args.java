@@ -54,6 +54,12 @@ final class Args {
 
 	String algo = "SHA-256";
 
+	@Option(names = { "-c", "--cache" }, paramLabel = "DIR",
+	        description = { "The directory where the trees are saved to be restored on the next start." })
+	String cache;
+
+	int jobs = Runtime.getRuntime().availableProcessors();
+
 	@Option(names = { "-b", "--bind" }, paramLabel = "HOST", defaultValue = "localhost", showDefaultValue = Visibility.ALWAYS,
 	        description = { "The host address to bind to." })
 	String host;
@@ -80,5 +86,18 @@ final class Args {
 			throw new ParameterException(this.spec.commandLine(),
 			        format("Invalid algorithm name: %s", algo));
 		}
+
+		this.algo = algo;
+	}
+
+	@Option(names = { "-j", "--jobs" }, paramLabel = "COUNT",
+	        description = { "The number of threads loading the files, by default the number of processors." })
+	void jobs(int jobs) {
+		if (jobs <= 0) {
+			throw new ParameterException(this.spec.commandLine(),
+			        format("Invalid number of jobs: %d", jobs));
+		}
+
+		this.jobs = jobs;
 	}
 }
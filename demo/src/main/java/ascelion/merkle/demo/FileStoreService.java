@@ -18,39 +18,75 @@
 package ascelion.merkle.demo;
 
 import java.io.IOException;
-import java.nio.channels.ByteChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.event.Observes;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeHash;
+import ascelion.merkle.TreeLeaf;
 import ascelion.merkle.TreeRoot;
-import ascelion.merkle.help.DataSlice;
+import ascelion.merkle.help.DigestHash;
+import ascelion.merkle.help.MappedSlice;
+import ascelion.merkle.help.TreeFile;
 
-import static ascelion.merkle.help.DataSlice.buildTree;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.Collections.unmodifiableCollection;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.codec.binary.Hex.decodeHex;
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
 import static org.slf4j.LoggerFactory.getLogger;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import org.apache.commons.codec.DecoderException;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -61,11 +97,16 @@ import org.slf4j.Logger;
 public class FileStoreService {
 	static private final Logger L = getLogger(FileStoreService.class);
 
+	// the quiet period after the last change of a file before it is hashed again
+	static private final long DEBOUNCE = 500;
+
 	@EqualsAndHashCode(of = { "path" })
 	@RequiredArgsConstructor
 	static class Container implements Comparable<Container> {
 		final Path path;
 		final UUID uuid = UUID.randomUUID();
+		// the current tree of each file of this container, by relative path
+		final ConcurrentMap<Path, TreeInfo> files = new ConcurrentHashMap<>();
 
 		@Override
 		public int compareTo(Container that) {
@@ -73,22 +114,83 @@ public class FileStoreService {
 		}
 	}
 
+	// the raw bytes of a root hash used as key; the digests are uniformly distributed, so the hash code is cached once
+	static final class Digest {
+		final byte[] bytes;
+		private final int hash;
+
+		Digest(@NonNull byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Digest)) {
+				return false;
+			}
+
+			final Digest that = (Digest) obj;
+
+			return this.hash == that.hash && Arrays.equals(this.bytes, that.bytes);
+		}
+
+		@Override
+		public String toString() {
+			return encodeHexString(this.bytes);
+		}
+	}
+
+	// a version of the tree of a file; a change creates a new instance
 	@EqualsAndHashCode(of = { "cont", "path" })
 	static class TreeInfo {
 		final Container cont;
 		final Path path;
-
-		TreeRoot<byte[]> root;
-
-		TreeInfo(@NonNull Container cont, @NonNull Path full) {
+		final Path full;
+		final TreeRoot<byte[]> root;
+		final Digest hash;
+		// the file as seen before it was read
+		final long size;
+		final FileTime modified;
+
+		TreeInfo(@NonNull Container cont, @NonNull Path full, @NonNull TreeRoot<byte[]> root,
+		        @NonNull BasicFileAttributes attrs) {
 			this.cont = cont;
 			this.path = cont.path.relativize(full);
+			this.full = full;
+			this.root = root;
+			this.hash = new Digest(root.hash());
+			this.size = attrs.size();
+			this.modified = attrs.lastModifiedTime();
 		}
 
-		void load(TreeBuilder<byte[]> tbld, int size) throws IOException {
-			final ByteChannel chan = Files.newByteChannel(this.cont.path.resolve(this.path), StandardOpenOption.READ);
-
-			this.root = buildTree(tbld, size, chan);
+		/**
+		 * Tells whether the file has the size and the modification time it had when this tree was loaded.
+		 *
+		 * <p>
+		 * The leaves are views of the mapped file, so they show its current bytes, and reading past the end of a
+		 * truncated file raises an {@link InternalError}. A changed file is reloaded after the quiet period, until then
+		 * this check keeps the new bytes from being served under the old hashes. It doesn't close the window: a change
+		 * made after the check, or within the resolution of the modification time without changing the size, is seen
+		 * by the readers of the slices.
+		 * </p>
+		 */
+		boolean current() {
+			try {
+				final BasicFileAttributes attrs = Files.readAttributes(this.full, BasicFileAttributes.class);
+
+				return attrs.size() == this.size && attrs.lastModifiedTime().equals(this.modified);
+			} catch (final IOException e) {
+				return false;
+			}
 		}
 
 		@Override
@@ -97,35 +199,158 @@ public class FileStoreService {
 		}
 	}
 
+	// a slice of the current version of a file
+	static final class Location {
+		final TreeInfo info;
+		final int index;
+
+		Location(TreeInfo info, int index) {
+			this.info = info;
+			this.index = index;
+		}
+
+		ByteBuffer content() {
+			final TreeLeaf<byte[], ByteBuffer> leaf = this.info.root.getLeaf(this.index);
+
+			return leaf.getContent().duplicate();
+		}
+	}
+
 	private final List<Container> conts = new ArrayList<>();
-	private final BiMap<TreeInfo, String> trees = HashBiMap.create();
+	private final Map<UUID, Container> uuids = new HashMap<>();
+	// the trees are published by hash as soon as they are loaded, the reads don't lock; files with the same content
+	// have the same hash, so each hash maps to the trees that have it, by file
+	private final ConcurrentMap<Digest, ConcurrentMap<Path, TreeInfo>> trees = new ConcurrentHashMap<>();
+	// the slices of all trees, by leaf hash
+	private final SliceStore slices = new SliceStore();
+	// the watched directories
+	private final ConcurrentMap<WatchKey, Path> keys = new ConcurrentHashMap<>();
+	// the files found by walking a directory reported by the watch service
+	private final Subject<Path> walked = PublishSubject.<Path> create().toSerialized();
+	// serialises the processing of each file, whatever reported it
+	private final Striped<Lock> locks = Striped.lazyWeakLock(1024);
+
+	@Inject
+	private Metrics metrics;
+	private Histogram buildTime;
+	private Histogram updateTime;
+	private Histogram restoreTime;
 
-	private String algo;
 	private int size;
+	private Path cache;
+	private DigestHash hashFn;
+	// the hash function used by the trees, counting its calls
+	private TreeHash<byte[]> treeFn;
 
-	private TreeBuilder<byte[]> tbld;
-	private Disposable sub;
+	private ExecutorService exec;
+	private WatchService watcher;
+	private volatile Disposable sub;
 
 	public List<Container> conts() {
 		return unmodifiableList(this.conts);
 	}
 
-	public TreeInfo[] trees() {
-		return this.trees.keySet().toArray(new TreeInfo[0]);
+	// a live view of the trees of a container, null if there is no such container
+	public Collection<TreeInfo> trees(UUID uuid) {
+		return ofNullable(this.uuids.get(uuid))
+		        .map(c -> unmodifiableCollection(c.files.values()))
+		        .orElse(null);
 	}
 
-	public TreeRoot<byte[]> tree(String hash) {
-		return ofNullable(this.trees.inverse().get(hash))
-		        .map(t -> t.root)
+	public TreeInfo tree(String hash) {
+		final byte[] bytes;
+
+		try {
+			bytes = decodeHex(hash);
+		} catch (final DecoderException e) {
+			return null;
+		}
+
+		return tree(bytes);
+	}
+
+	public TreeInfo tree(byte[] hash) {
+		final Map<Path, TreeInfo> holders = this.trees.get(new Digest(hash));
+
+		if (holders == null) {
+			return null;
+		}
+
+		return holders.values()
+		        .stream()
+		        .findAny()
 		        .orElse(null);
 	}
 
+	public List<Location> files(byte[] leaf) {
+		final List<Location> locs = new ArrayList<>();
+
+		this.slices.files(leaf).forEach((f, h) -> {
+			final Location loc = location(f, h.index, leaf);
+
+			if (loc != null) {
+				locs.add(loc);
+			}
+		});
+
+		return locs;
+	}
+
+	// a slice from a file that hasn't changed since its tree was loaded, null if there is none
+	public Location slice(byte[] leaf) {
+		for (final Map.Entry<Path, SliceStore.Holder> e : this.slices.files(leaf).entrySet()) {
+			final Location loc = location(e.getKey(), e.getValue().index, leaf);
+
+			if (loc != null && loc.info.current()) {
+				return loc;
+			}
+		}
+
+		return null;
+	}
+
+	// the index is checked against the current tree, which may be replaced while the index is being updated
+	private Location location(Path full, int index, byte[] leaf) {
+		for (final Container c : this.conts) {
+			if (full.startsWith(c.path)) {
+				final TreeInfo info = c.files.get(c.path.relativize(full));
+
+				if (info != null && index < info.root.count() && Arrays.equals(info.root.getLeaf(index).hash(), leaf)) {
+					return new Location(info, index);
+				}
+			}
+		}
+
+		return null;
+	}
+
 	@SuppressWarnings("unused")
-	private void init(@Observes Args args) throws IOException {
-		this.algo = args.algo;
+	private void init(@Observes Args args) throws IOException, NoSuchAlgorithmException {
 		this.size = args.size;
+		this.cache = args.cache != null ? Files.createDirectories(Paths.get(args.cache)).toAbsolutePath() : null;
+
+		// one digest per thread, cloned from a single provider lookup
+		this.hashFn = new DigestHash(args.algo);
+		this.treeFn = new MeteredHash(this.hashFn,
+		        this.metrics.counter("merkle_hash_calls_total", "The number of hash function calls."),
+		        this.metrics.counter("merkle_hashed_bytes_total", "The number of bytes hashed."));
+
+		final String help = "The time to load the tree of a file.";
+
+		this.buildTime = this.metrics.histogram("merkle_load_seconds", help, "mode=\"build\"");
+		this.updateTime = this.metrics.histogram("merkle_load_seconds", help, "mode=\"update\"");
+		this.restoreTime = this.metrics.histogram("merkle_load_seconds", help, "mode=\"restore\"");
 
-		this.tbld = new TreeBuilder<>(this::hash, DataSlice::concat, new byte[0]);
+		this.metrics.gauge("merkle_trees", "The number of trees by hash.", this.trees::size);
+		this.metrics.gauge("merkle_slices", "The number of distinct slices.", this.slices::count);
+		this.metrics.gauge("merkle_slice_bytes", "The size of the distinct slices.", this.slices::unique);
+		this.metrics.gauge("merkle_file_bytes", "The size of all files.", this.slices::total);
+
+		this.exec = Executors.newFixedThreadPool(args.jobs, new ThreadFactoryBuilder()
+		        .setNameFormat("indexer-%d")
+		        .setDaemon(true)
+		        .build());
+		this.watcher = FileSystems.getDefault().newWatchService();
 
 		Stream.of(args.directories)
 		        .map(Paths::get)
@@ -135,6 +360,8 @@ public class FileStoreService {
 
 		Collections.sort(this.conts);
 
+		this.conts.forEach(c -> this.uuids.put(c.uuid, c));
+
 		for (int i = 1; i < this.conts.size(); i++) {
 			final Path c = this.conts.get(i).path;
 
@@ -147,22 +374,68 @@ public class FileStoreService {
 			        });
 		}
 
-		this.conts.forEach(this::walk);
+		// saving a tree would be seen as a change
+		if (this.cache != null) {
+			this.conts.stream()
+			        .filter(c -> this.cache.startsWith(c.path))
+			        .findAny()
+			        .ifPresent(c -> {
+				        throw new IllegalArgumentException(format("The cache %s is inside %s", this.cache, c.path));
+			        });
+		}
+
+		final long start = System.nanoTime();
+
+		// don't block the observer, the trees are served as they become available
+		final CompletableFuture<?>[] walks = this.conts.stream()
+		        .map(c -> CompletableFuture.supplyAsync(() -> {
+			        final List<CompletableFuture<?>> loads = new ArrayList<>();
+
+			        walk(c.path, file -> loads.add(CompletableFuture.runAsync(() -> changed(c, file), this.exec)));
+
+			        return loads.toArray(new CompletableFuture<?>[0]);
+		        }, this.exec).thenCompose(CompletableFuture::allOf))
+		        .toArray(CompletableFuture[]::new);
+
+		CompletableFuture.allOf(walks).whenComplete((v, e) -> {
+			if (e != null) {
+				L.error("Cannot load all files", e);
+			}
+
+			L.info("Loaded {} files in {} ms, {} distinct slices of {} bytes out of {}",
+			        this.conts.stream().mapToInt(c -> c.files.size()).sum(),
+			        (System.nanoTime() - start) / 1_000_000, this.slices.count(), this.slices.unique(), this.slices.total());
+
+			// the changes made while loading are queued by the watch service; a group lasts until the quiet period of
+			// its path ends, then a later change of the same path starts a new one
+			this.sub = changes()
+			        .mergeWith(this.walked)
+			        .groupBy(p -> p)
+			        .flatMapCompletable(g -> g
+			                .debounce(DEBOUNCE, MILLISECONDS)
+			                .take(1)
+			                .concatMapCompletable(p -> Completable.fromAction(() -> changed(p))
+			                        .subscribeOn(Schedulers.from(this.exec))))
+			        .subscribe(() -> L.info("Stopped watching"), x -> L.error("Cannot watch the containers", x));
+		});
 	}
 
+	// walks a directory, watches it and visits each non empty file
 	@SneakyThrows
-	private void walk(Container cont) {
-		Files.walkFileTree(cont.path, new SimpleFileVisitor<Path>() {
+	private void walk(Path dir, Consumer<Path> visit) {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
 			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				if (Files.size(file) > 0) {
-					final TreeInfo tree = new TreeInfo(cont, file);
-
-					L.info("Loading {}", tree);
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				FileStoreService.this.keys.put(dir.register(FileStoreService.this.watcher,
+				        ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
 
-					tree.load(FileStoreService.this.tbld, FileStoreService.this.size);
+				return FileVisitResult.CONTINUE;
+			}
 
-					FileStoreService.this.trees.put(tree, encodeHexString(tree.root.hash()));
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.size() > 0) {
+					visit.accept(file);
 				}
 
 				return FileVisitResult.CONTINUE;
@@ -177,18 +450,210 @@ public class FileStoreService {
 		});
 	}
 
-	@SneakyThrows
-	private byte[] hash(byte[] data) {
-		final MessageDigest dig = MessageDigest.getInstance(this.algo);
+	// the paths reported by the watch service
+	private Observable<Path> changes() {
+		return Observable.<Path> create(emitter -> {
+			while (!emitter.isDisposed()) {
+				final WatchKey key;
+
+				try {
+					key = this.watcher.take();
+				} catch (final InterruptedException | ClosedWatchServiceException e) {
+					break;
+				}
+
+				final Path dir = this.keys.get(key);
+
+				for (final WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						L.warn("Some changes of {} have been lost", dir);
+					} else if (dir != null) {
+						emitter.onNext(dir.resolve((Path) event.context()));
+					}
+				}
+
+				if (!key.reset()) {
+					this.keys.remove(key);
+				}
+			}
+
+			emitter.onComplete();
+		}).subscribeOn(Schedulers.newThread());
+	}
+
+	// a failure is logged and doesn't stop the watching
+	private void changed(Path full) {
+		try {
+			this.conts.stream()
+			        .filter(c -> full.startsWith(c.path))
+			        .findAny()
+			        .ifPresent(c -> {
+				        if (Files.isDirectory(full)) {
+					        // the files of a new or moved directory go through their own lane
+					        walk(full, this.walked::onNext);
+				        } else if (Files.exists(full)) {
+					        changed(c, full);
+				        } else {
+					        // a deleted file or directory, with all files below it
+					        final Path gone = c.path.relativize(full);
+
+					        c.files.keySet()
+					                .stream()
+					                .filter(p -> p.startsWith(gone))
+					                .forEach(p -> changed(c, c.path.resolve(p)));
+				        }
+			        });
+		} catch (final Exception e) {
+			L.error(full.toString(), e);
+		}
+	}
+
+	// loads or reloads a file, or forgets it if it has been deleted; the same file is processed by one thread at a time
+	private void changed(Container cont, Path full) {
+		final Lock lock = this.locks.get(full);
+
+		lock.lock();
+
+		try {
+			update(cont, full);
+		} catch (final IOException | RuntimeException e) {
+			L.error(full.toString(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void update(Container cont, Path full) throws IOException {
+		final Path path = cont.path.relativize(full);
+		final TreeInfo prev = cont.files.get(path);
+
+		if (!Files.isRegularFile(full) || Files.size(full) == 0) {
+			if (prev != null && cont.files.remove(path, prev)) {
+				L.info("Removing {}", prev);
+
+				unpublish(prev);
+				this.slices.remove(full, prev.root);
+			}
+
+			return;
+		}
+
+		final TreeInfo next = load(cont, full, prev);
+
+		// readers see the previous or the next tree, both complete
+		cont.files.put(path, next);
+		publish(next);
+
+		if (prev != null) {
+			if (!prev.hash.equals(next.hash)) {
+				unpublish(prev);
+			}
 
-		dig.update(data);
+			this.slices.update(full, prev.root, next.root);
+		} else {
+			this.slices.add(full, next.root);
+		}
+	}
+
+	private void publish(TreeInfo info) {
+		this.trees.compute(info.hash, (d, holders) -> {
+			final ConcurrentMap<Path, TreeInfo> next = holders != null ? holders : new ConcurrentHashMap<>();
+
+			next.put(info.full, info);
+
+			return next;
+		});
+	}
+
+	// the hash remains published while other files have it
+	private void unpublish(TreeInfo info) {
+		this.trees.computeIfPresent(info.hash, (d, holders) -> {
+			holders.remove(info.full, info);
+
+			return holders.isEmpty() ? null : holders;
+		});
+	}
+
+	// the time of each file is logged, the histograms aggregate them by mode
+	private TreeInfo load(Container cont, Path full, TreeInfo prev) throws IOException {
+		// the builders keep the collected leaves, so each file needs its own
+		final long start = System.nanoTime();
+		final TreeBuilder<byte[]> tbld = new TreeBuilder<>(this.treeFn, new byte[0])
+		        .compact(true)
+		        .lazy(true);
+		final String algo = this.hashFn.getAlgorithm();
+		final Path store = store(full);
+		final BasicFileAttributes attrs = Files.readAttributes(full, BasicFileAttributes.class);
+
+		if (prev == null && store != null) {
+			try {
+				final TreeRoot<byte[]> root = TreeFile.read(tbld, algo, this.size, full, store);
+
+				if (root != null) {
+					final long time = System.nanoTime() - start;
+
+					this.restoreTime.record(time);
+
+					L.info("Restored {} in {} ms", full, time / 1_000_000);
+
+					return new TreeInfo(cont, full, root, attrs);
+				}
+			} catch (final IOException e) {
+				L.warn("Cannot restore {}: {}", full, e.getMessage());
+			}
+		}
+
+		final TreeRoot<byte[]> root;
+
+		// the slices are mapped, the content is not kept on heap
+		try (FileChannel chan = FileChannel.open(full, StandardOpenOption.READ)) {
+			if (prev != null) {
+				// every slice is hashed again, but only the ancestors of the changed ones
+				root = MappedSlice.updateTree(tbld, this.size, chan, prev.root);
+			} else {
+				root = MappedSlice.buildTree(tbld, this.size, chan);
+			}
+		}
 
-		return dig.digest();
+		final long time = System.nanoTime() - start;
+
+		(prev != null ? this.updateTime : this.buildTime).record(time);
+
+		L.info("{} {} in {} ms", prev != null ? "Updated" : "Built", full, time / 1_000_000);
+
+		if (store != null) {
+			try {
+				TreeFile.write(root, algo, this.size, attrs, store);
+			} catch (final IOException e) {
+				L.warn("Cannot save {}: {}", full, e.getMessage());
+			}
+		}
+
+		return new TreeInfo(cont, full, root, attrs);
+	}
+
+	// the tree file of a data file, named after the hash of its absolute path
+	private Path store(Path file) {
+		if (this.cache == null) {
+			return null;
+		}
+
+		final byte[] name = this.hashFn.hash(file.toAbsolutePath().toString().getBytes(UTF_8));
+
+		return this.cache.resolve(encodeHexString(name) + ".tree");
 	}
 
 	@PreDestroy
-	private void preDestroy() {
-		this.sub.dispose();
+	private void preDestroy() throws IOException {
+		if (this.sub != null) {
+			this.sub.dispose();
+		}
+		if (this.watcher != null) {
+			this.watcher.close();
+		}
+		if (this.exec != null) {
+			this.exec.shutdownNow();
+		}
 	}
 
 }
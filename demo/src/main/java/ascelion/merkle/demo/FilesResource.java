@@ -17,24 +17,45 @@
 
 package ascelion.merkle.demo;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.json.bind.annotation.JsonbTypeSerializer;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import ascelion.merkle.TreeLeaf;
 import ascelion.merkle.TreeRoot;
+import ascelion.merkle.help.Proof;
 
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.apache.commons.codec.binary.Hex.decodeHex;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 
 @Path("")
 @Produces(APPLICATION_JSON)
@@ -54,16 +75,37 @@ public class FilesResource {
 		}
 	}
 
+	static public class LocationResponse {
+		public final UUID container;
+		public final java.nio.file.Path path;
+		@JsonbTypeSerializer(JsonbResolver.HEXSerializer.class)
+		public final byte[] hash;
+		public final int index;
+
+		LocationResponse(FileStoreService.Location loc) {
+			this.container = loc.info.cont.uuid;
+			this.path = loc.info.path;
+			this.hash = loc.info.root.hash();
+			this.index = loc.index;
+		}
+	}
+
 	static public class SliceResponse {
 		@JsonbTypeSerializer(JsonbResolver.B64Serializer.class)
 		public final byte[] content;
 		@JsonbTypeSerializer(JsonbResolver.HEXSerializer.class)
 		public final byte[][] hashes;
 
-		public SliceResponse(TreeLeaf<byte[], byte[]> leaf) {
-			this.content = leaf.getContent();
+		public SliceResponse(TreeRoot<byte[]> tree, int index) {
+			final TreeLeaf<byte[], ByteBuffer> leaf = tree.getLeaf(index);
+			final ByteBuffer buf = leaf.getContent().duplicate();
+
+			this.content = new byte[buf.remaining()];
 
-			final List<byte[]> chain = leaf.getChain();
+			buf.get(this.content);
+
+			// the trees are lazy, the chain is computed on request
+			final List<byte[]> chain = tree.proof(index);
 
 			this.hashes = chain.stream()
 			        .skip(1)
@@ -72,6 +114,38 @@ public class FilesResource {
 		}
 	}
 
+	static final String LEAF_HEADER = "X-Merkle-Leaf";
+	static final String PROOF_HEADER = "X-Merkle-Proof";
+	static final String ROOT_HEADER = "X-Merkle-Root";
+	static final String COUNT_HEADER = "X-Merkle-Count";
+	static final String SIZE_HEADER = "X-Merkle-Slice-Size";
+
+	// the quiet period after which a changed file has been reloaded, in seconds
+	static private final long RETRY = 1;
+
+	// the slices are views of the mapped files, which may change or be truncated until their trees are reloaded; the
+	// file is checked before a slice is served and the request fails with 503 if it has changed; a change made while
+	// a slice is streamed can't be reported anymore: a truncation aborts the stream, the other changes are detected by
+	// the client when checking the slice against its hash
+	static private void check(FileStoreService.TreeInfo info) {
+		if (!info.current()) {
+			throw unavailable();
+		}
+	}
+
+	static private ServiceUnavailableException unavailable() {
+		return new ServiceUnavailableException("The file has changed, its tree is being updated", RETRY);
+	}
+
+	// reading the mapping of a truncated file faults, which is reported as an internal error
+	static private void write(WritableByteChannel chan, ByteBuffer content) throws IOException {
+		try {
+			chan.write(content);
+		} catch (final InternalError e) {
+			throw new IOException("The file has been truncated", e);
+		}
+	}
+
 	@Inject
 	private FileStoreService fss;
 
@@ -86,21 +160,227 @@ public class FilesResource {
 	@GET
 	@Path("containers/{uuid}")
 	public FileResponse[] files(@PathParam("uuid") UUID uuid) {
-		return Stream.of(this.fss.trees())
-		        .filter(t -> t.cont.uuid.equals(uuid))
+		final Collection<FileStoreService.TreeInfo> trees = this.fss.trees(uuid);
+
+		if (trees == null) {
+			throw new NotFoundException();
+		}
+
+		return trees.stream()
 		        .map(FileResponse::new)
 		        .toArray(FileResponse[]::new);
 	}
 
+	/**
+	 * Gets the content of a slice with its proof; the file is checked after the content is copied, so the response
+	 * fails rather than pairing new bytes with old hashes.
+	 */
 	@GET
 	@Path("slice/{hash}/{index}")
 	public SliceResponse slice(@PathParam("hash") String hash, @PathParam("index") int index) {
-		final TreeRoot<byte[]> tree = this.fss.tree(hash);
+		final FileStoreService.TreeInfo info = this.fss.tree(hash);
+
+		if (info == null || index < 0 || index >= info.root.count()) {
+			throw new NotFoundException();
+		}
+
+		check(info);
+
+		final SliceResponse slice;
+
+		try {
+			slice = new SliceResponse(info.root, index);
+		} catch (final InternalError e) {
+			throw unavailable();
+		}
+
+		check(info);
+
+		return slice;
+	}
+
+	/**
+	 * Gets the files containing a slice, with the index of its first occurrence in each of them.
+	 */
+	@GET
+	@Path("leaf/{hash}/files")
+	public LocationResponse[] files(@PathParam("hash") String hash) {
+		return this.fss.files(decode(hash))
+		        .stream()
+		        .map(LocationResponse::new)
+		        .toArray(LocationResponse[]::new);
+	}
+
+	/**
+	 * Streams the content of a slice addressed by its hash, from any of the files containing it that hasn't changed
+	 * since its tree was loaded.
+	 */
+	@GET
+	@Path("leaf/{hash}/content")
+	@Produces(APPLICATION_OCTET_STREAM)
+	public Response leaf(@PathParam("hash") String hash) {
+		final byte[] leaf = decode(hash);
+		final FileStoreService.Location loc = this.fss.slice(leaf);
+
+		if (loc == null) {
+			if (this.fss.files(leaf).isEmpty()) {
+				throw new NotFoundException();
+			}
+
+			throw unavailable();
+		}
+
+		final ByteBuffer content = loc.content();
+		final StreamingOutput output = out -> write(Channels.newChannel(out), content);
+
+		return Response.ok(output, APPLICATION_OCTET_STREAM)
+		        .header(CONTENT_LENGTH, content.remaining())
+		        .header(LEAF_HEADER, hash)
+		        .build();
+	}
+
+	/**
+	 * Streams the content of a slice as it is, the proof is sent in the response headers: the hash of the slice, the
+	 * comma separated hashes of the siblings from the leaf up and the hash of the root, all hex encoded.
+	 */
+	@GET
+	@Path("slice/{hash}/{index}/content")
+	@Produces(APPLICATION_OCTET_STREAM)
+	public Response content(@PathParam("hash") String hash, @PathParam("index") int index) {
+		final FileStoreService.TreeInfo info = this.fss.tree(hash);
 
-		if (tree == null || index >= tree.count()) {
+		if (info == null || index < 0 || index >= info.root.count()) {
 			throw new NotFoundException();
 		}
 
-		return new SliceResponse(tree.getLeaf(index));
+		check(info);
+
+		final TreeRoot<byte[]> tree = info.root;
+		final TreeLeaf<byte[], ByteBuffer> leaf = tree.getLeaf(index);
+		final ByteBuffer content = leaf.getContent().duplicate();
+		final List<byte[]> chain = tree.proof(index);
+		final String proof = chain.subList(1, chain.size() - 1)
+		        .stream()
+		        .map(Hex::encodeHexString)
+		        .collect(joining(","));
+
+		// read once from the mapped region of the file; the container only takes a stream, so the channel over it copies
+		// the content in chunks of at most 8 KB through a heap buffer, but never holds the whole slice
+		final StreamingOutput output = out -> write(Channels.newChannel(out), content);
+
+		return Response.ok(output, APPLICATION_OCTET_STREAM)
+		        .header(CONTENT_LENGTH, content.remaining())
+		        .header(LEAF_HEADER, encodeHexString(leaf.hash()))
+		        .header(PROOF_HEADER, proof)
+		        .header(ROOT_HEADER, encodeHexString(tree.hash()))
+		        .header(COUNT_HEADER, tree.count())
+		        .build();
+	}
+
+	/**
+	 * Streams the content of the slices in the range [from, to) as they are, the range proof is sent in the response
+	 * headers: the comma separated hashes of the boundary siblings, the hash of the root and the size of a slice, all
+	 * but the last slice of the file having this size.
+	 */
+	@GET
+	@Path("slices/{hash}/{from}/{to}")
+	@Produces(APPLICATION_OCTET_STREAM)
+	public Response slices(@PathParam("hash") String hash, @PathParam("from") int from, @PathParam("to") int to) {
+		final FileStoreService.TreeInfo info = this.fss.tree(hash);
+
+		if (info == null) {
+			throw new NotFoundException();
+		}
+
+		final TreeRoot<byte[]> tree = info.root;
+
+		if (from < 0 || from >= to || to > tree.count()) {
+			throw new BadRequestException("The range must be a non empty interval between 0 and the number of slices");
+		}
+
+		check(info);
+
+		final ByteBuffer[] contents = new ByteBuffer[to - from];
+		long length = 0;
+
+		for (int k = from; k < to; k++) {
+			final TreeLeaf<byte[], ByteBuffer> leaf = tree.getLeaf(k);
+
+			contents[k - from] = leaf.getContent().duplicate();
+			length += contents[k - from].remaining();
+		}
+
+		final String proof = tree.rangeProof(from, to)
+		        .stream()
+		        .map(Hex::encodeHexString)
+		        .collect(joining(","));
+		final TreeLeaf<byte[], ByteBuffer> first = tree.getLeaf(0);
+
+		// read once from the mapped regions of the file and copied to the stream in chunks of at most 8 KB, see above
+		final StreamingOutput output = out -> {
+			final WritableByteChannel chan = Channels.newChannel(out);
+
+			for (final ByteBuffer content : contents) {
+				write(chan, content);
+			}
+		};
+
+		return Response.ok(output, APPLICATION_OCTET_STREAM)
+		        .header(CONTENT_LENGTH, length)
+		        .header(PROOF_HEADER, proof)
+		        .header(ROOT_HEADER, encodeHexString(tree.hash()))
+		        .header(COUNT_HEADER, tree.count())
+		        .header(SIZE_HEADER, first.getContent().capacity())
+		        .build();
+	}
+
+	/**
+	 * Gets the proof of a slice in the binary format of {@link Proof}.
+	 */
+	@GET
+	@Path("proof/{hash}/{index}")
+	@Produces(APPLICATION_OCTET_STREAM)
+	public StreamingOutput proof(@PathParam("hash") String hash, @PathParam("index") int index) {
+		return proofs(hash, singletonList(index));
+	}
+
+	/**
+	 * Gets the proofs of several slices of a file, as the number of proofs followed by the proofs in the binary format of
+	 * {@link Proof}.
+	 */
+	@GET
+	@Path("proofs/{hash}")
+	@Produces(APPLICATION_OCTET_STREAM)
+	public StreamingOutput proofs(@PathParam("hash") String hash, @QueryParam("index") List<Integer> indices) {
+		final FileStoreService.TreeInfo info = this.fss.tree(hash);
+
+		if (info == null) {
+			throw new NotFoundException();
+		}
+
+		final TreeRoot<byte[]> tree = info.root;
+		if (indices.stream().anyMatch(index -> index < 0 || index >= tree.count())) {
+			throw new BadRequestException("The index must be between 0 and the number of slices");
+		}
+
+		return out -> {
+			final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+			data.writeInt(indices.size());
+
+			for (final int index : indices) {
+				Proof.of(tree, index).writeTo(data);
+			}
+
+			data.flush();
+		};
+	}
+
+	private byte[] decode(String hash) {
+		try {
+			return decodeHex(hash);
+		} catch (final DecoderException e) {
+			throw new NotFoundException();
+		}
 	}
 }
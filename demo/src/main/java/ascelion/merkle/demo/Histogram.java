@@ -0,0 +1,104 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of durations in nanoseconds. The values are counted in buckets that split each power of two in
+ * {@value #SUB} linear parts, so a quantile is known within 1/{@value #SUB} of its value whatever its magnitude, with a
+ * fixed footprint of a few kilobytes.
+ */
+final class Histogram {
+	static private final int SUB_BITS = 4;
+	static final int SUB = 1 << SUB_BITS;
+
+	// the index of the bucket of a non negative value, the values below 2 * SUB have their own bucket
+	static int index(long value) {
+		if (value < SUB) {
+			return (int) value;
+		}
+
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+		return (shift << SUB_BITS) + (int) (value >>> shift);
+	}
+
+	// the greatest value counted in a bucket
+	static long upper(int index) {
+		if (index < 2 * SUB) {
+			return index;
+		}
+
+		final int shift = (index >>> SUB_BITS) - 1;
+		final long mantissa = index - ((long) shift << SUB_BITS);
+
+		return (mantissa + 1 << shift) - 1;
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	void record(long nanos) {
+		final long value = Math.max(nanos, 0);
+
+		this.counts.incrementAndGet(index(value));
+		this.count.increment();
+		this.sum.add(value);
+	}
+
+	long count() {
+		return this.count.sum();
+	}
+
+	long sum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * Gets an upper bound of the quantile q, from a snapshot of the buckets taken while recording goes on.
+	 */
+	long quantile(double q) {
+		final long[] snap = new long[this.counts.length()];
+		long total = 0;
+
+		for (int k = 0; k < snap.length; k++) {
+			snap[k] = this.counts.get(k);
+			total += snap[k];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(q * total));
+		long seen = 0;
+
+		for (int k = 0; k < snap.length; k++) {
+			seen += snap[k];
+
+			if (seen >= rank) {
+				return upper(k);
+			}
+		}
+
+		return upper(snap.length - 1);
+	}
+}
@@ -69,11 +69,13 @@ public class JsonbResolver implements ContextResolver<Jsonb> {
 		}
 	}
 
+	// thread safe, creating one is expensive
+	private final Jsonb jsonb = JsonbBuilder.create(
+	        new JsonbConfig()
+	                .withAdapters(new PathAdapter()));
+
 	@Override
 	public Jsonb getContext(Class<?> type) {
-		return JsonbBuilder.create(
-		        new JsonbConfig()
-		                .setProperty(JsonbConfig.FORMATTING, true)
-		                .withAdapters(new PathAdapter()));
+		return this.jsonb;
 	}
 }
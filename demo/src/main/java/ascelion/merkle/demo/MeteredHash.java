@@ -0,0 +1,49 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import ascelion.merkle.TreeHash;
+
+import lombok.RequiredArgsConstructor;
+
+// counts the calls of a hash function and the bytes it has hashed
+@RequiredArgsConstructor
+final class MeteredHash implements TreeHash<byte[]> {
+	private final TreeHash<byte[]> hash;
+	private final LongAdder calls;
+	private final LongAdder bytes;
+
+	@Override
+	public byte[] hash(byte[] value) {
+		this.calls.increment();
+		this.bytes.add(value.length);
+
+		return this.hash.hash(value);
+	}
+
+	@Override
+	public byte[] hash(byte[] left, byte[] right) {
+		this.calls.increment();
+		this.bytes.add(left.length + right.length);
+
+		return this.hash.hash(left, right);
+	}
+}
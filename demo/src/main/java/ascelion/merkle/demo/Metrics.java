@@ -0,0 +1,124 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.inject.Singleton;
+
+import static java.lang.String.format;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Registry of the metrics of the server, written in the Prometheus text exposition format. The counters and histograms
+ * are created once by name and labels, then updated without locking.
+ */
+@Singleton
+public class Metrics {
+	static private final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+	static private final double NANOS = 1e9;
+
+	@RequiredArgsConstructor
+	static private final class Family {
+		final String type;
+		final String help;
+		// by labels, sorted to have a stable output
+		final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<>();
+	}
+
+	static private String braces(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Gets a monotonic counter, its name should end with {@code _total}.
+	 */
+	public LongAdder counter(String name, String help) {
+		return (LongAdder) series(name, "counter", help, "", LongAdder::new);
+	}
+
+	/**
+	 * Gets a histogram of durations, exposed in seconds as a summary with the quantiles 0.5, 0.99 and 0.999; the labels
+	 * are given as in the exposition format, for instance {@code endpoint="/slice/{hash}/{index}"}.
+	 */
+	public Histogram histogram(String name, String help, String labels) {
+		return (Histogram) series(name, "summary", help, labels, Histogram::new);
+	}
+
+	/**
+	 * Registers a value sampled when the metrics are written.
+	 */
+	public void gauge(String name, String help, LongSupplier value) {
+		series(name, "gauge", help, "", () -> value);
+	}
+
+	public void write(Writer out) throws IOException {
+		for (final Map.Entry<String, Family> e : this.families.entrySet()) {
+			final String name = e.getKey();
+			final Family fam = e.getValue();
+
+			out.write(format("# HELP %s %s\n", name, fam.help));
+			out.write(format("# TYPE %s %s\n", name, fam.type));
+
+			for (final Map.Entry<String, Object> s : fam.series.entrySet()) {
+				final String labels = s.getKey();
+				final Object value = s.getValue();
+
+				if (value instanceof Histogram) {
+					final Histogram h = (Histogram) value;
+					final String prefix = labels.isEmpty() ? "" : labels + ",";
+
+					for (final double q : QUANTILES) {
+						out.write(format("%s{%squantile=\"%s\"} %s\n", name, prefix, q, h.quantile(q) / NANOS));
+					}
+
+					out.write(format("%s_sum%s %s\n", name, braces(labels), h.sum() / NANOS));
+					out.write(format("%s_count%s %d\n", name, braces(labels), h.count()));
+				} else if (value instanceof LongAdder) {
+					out.write(format("%s%s %d\n", name, braces(labels), ((LongAdder) value).sum()));
+				} else {
+					out.write(format("%s%s %d\n", name, braces(labels), ((LongSupplier) value).getAsLong()));
+				}
+			}
+		}
+
+		out.flush();
+	}
+
+	private Object series(String name, String type, String help, String labels, Supplier<?> init) {
+		final Family fam = this.families.computeIfAbsent(name, n -> new Family(type, help));
+
+		if (!fam.type.equals(type)) {
+			throw new IllegalArgumentException(format("The metric %s is a %s", name, fam.type));
+		}
+
+		return fam.series.computeIfAbsent(labels, l -> init.get());
+	}
+
+}
@@ -0,0 +1,142 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import static java.lang.String.format;
+
+/**
+ * Records the latency of the requests by the path template of the resource method, such as
+ * {@code /slice/{hash}/{index}}, so overloaded methods are told apart. A response with an entity is timed until the
+ * entity has been written, so the streamed contents are included. The histogram of a method is looked up once, a
+ * request only records its duration.
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+	static private final String START = MetricsFilter.class.getName() + ".start";
+	static private final String LATENCY = MetricsFilter.class.getName() + ".latency";
+
+	static private String template(Class<?> type, Method method) {
+		final StringBuilder b = new StringBuilder();
+
+		append(b, type);
+		append(b, method);
+
+		return b.length() > 0 ? b.toString() : "/";
+	}
+
+	static private void append(StringBuilder b, AnnotatedElement elem) {
+		final Path path = elem != null ? elem.getAnnotation(Path.class) : null;
+
+		if (path != null) {
+			for (final String s : path.value().split("/")) {
+				if (s.length() > 0) {
+					b.append('/').append(s);
+				}
+			}
+		}
+	}
+
+	static private void record(Histogram latency, Object start) {
+		if (start != null) {
+			latency.record(System.nanoTime() - (Long) start);
+		}
+	}
+
+	@Inject
+	private Metrics metrics;
+	@Context
+	private ResourceInfo info;
+
+	private final ConcurrentMap<Method, Histogram> latencies = new ConcurrentHashMap<>();
+	// the requests not matched to a resource method
+	private volatile Histogram unmatched;
+
+	@Override
+	public void filter(ContainerRequestContext req) throws IOException {
+		req.setProperty(START, System.nanoTime());
+	}
+
+	@Override
+	public void filter(ContainerRequestContext req, ContainerResponseContext resp) throws IOException {
+		final Histogram latency = latency(this.info.getResourceMethod());
+
+		if (resp.hasEntity()) {
+			req.setProperty(LATENCY, latency);
+		} else {
+			record(latency, req.getProperty(START));
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext ctx) throws IOException {
+		try {
+			ctx.proceed();
+		} finally {
+			final Object latency = ctx.getProperty(LATENCY);
+
+			if (latency != null) {
+				record((Histogram) latency, ctx.getProperty(START));
+			}
+		}
+	}
+
+	private Histogram latency(Method method) {
+		if (method == null) {
+			Histogram h = this.unmatched;
+
+			if (h == null) {
+				this.unmatched = h = histogram("none");
+			}
+
+			return h;
+		}
+
+		// a lookup doesn't lock once the histogram exists
+		final Histogram h = this.latencies.get(method);
+
+		if (h != null) {
+			return h;
+		}
+
+		return this.latencies.computeIfAbsent(method, m -> histogram(template(this.info.getResourceClass(), m)));
+	}
+
+	private Histogram histogram(String endpoint) {
+		return this.metrics
+		        .histogram("merkle_request_seconds", "The latency of the requests.", format("endpoint=\"%s\"", endpoint));
+	}
+}
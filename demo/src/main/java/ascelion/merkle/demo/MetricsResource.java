@@ -0,0 +1,45 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.io.OutputStreamWriter;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@Path("metrics")
+public class MetricsResource {
+
+	@Inject
+	private Metrics metrics;
+
+	/**
+	 * Gets the metrics in the Prometheus text exposition format.
+	 */
+	@GET
+	@Produces("text/plain; version=0.0.4; charset=utf-8")
+	public StreamingOutput metrics() {
+		return out -> this.metrics.write(new OutputStreamWriter(out, UTF_8));
+	}
+}
@@ -0,0 +1,224 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+import ascelion.merkle.demo.FileStoreService.Digest;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Content addressed index of the slices of all files, by the hash of their leaves. A distinct slice has one entry with
+ * the set of files containing it, each with the number of occurrences and the first index of the slice; the entry is
+ * dropped when the last occurrence is released.
+ *
+ * <p>
+ * This is an index, not a storage: each tree keeps its own leaves, which are views of the mapped file, so the content
+ * is never on heap and sharing a leaf of another file would serve the bytes of that file after it changes. What it
+ * saves is the page cache used to serve the slices by hash, since all requests for a slice read it from the same
+ * mapping, and it reports the distinct size of the data.
+ * </p>
+ * <p>
+ * The files are identified by their absolute path, not by a version of their tree, so a change touches only the
+ * slices found by {@link TreeRoot#diff}, and the occurrences of a slice in a file are counted before touching the
+ * index, so a hash repeated over a file, like the one of a block of zeros, is updated once.
+ * </p>
+ */
+final class SliceStore {
+
+	// the occurrences of a slice in a file; replaced on change, so the readers don't need to lock
+	static final class Holder {
+		final int count;
+		final int index;
+
+		Holder(int count, int index) {
+			this.count = count;
+			this.index = index;
+		}
+	}
+
+	// a distinct slice with the files containing it
+	static private final class Slice {
+		final int length;
+		final ConcurrentMap<Path, Holder> files = new ConcurrentHashMap<>(1);
+
+		Slice(int length) {
+			this.length = length;
+		}
+	}
+
+	// the change of the occurrences of a slice in a file
+	static private final class Delta {
+		final int length;
+		int count;
+		int first = Integer.MAX_VALUE;
+
+		Delta(int length) {
+			this.length = length;
+		}
+	}
+
+	static private Delta delta(Map<Digest, Delta> deltas, TreeRoot<byte[]> root, int index) {
+		final TreeLeaf<byte[], ByteBuffer> leaf = root.getLeaf(index);
+
+		return deltas.computeIfAbsent(new Digest(leaf.hash()), d -> new Delta(leaf.getContent().capacity()));
+	}
+
+	static private boolean holds(TreeRoot<byte[]> root, int index, byte[] hash) {
+		return index < root.count() && Arrays.equals(root.getLeaf(index).hash(), hash);
+	}
+
+	// the first index of a slice in a tree
+	static private int first(TreeRoot<byte[]> root, byte[] hash, int from) {
+		for (int k = from; k < root.count(); k++) {
+			if (Arrays.equals(root.getLeaf(k).hash(), hash)) {
+				return k;
+			}
+		}
+
+		return Integer.MAX_VALUE;
+	}
+
+	private final ConcurrentMap<Digest, Slice> slices = new ConcurrentHashMap<>();
+	private final AtomicLong unique = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * References the slices of a new file.
+	 */
+	void add(Path file, TreeRoot<byte[]> root) {
+		update(file, null, root);
+	}
+
+	/**
+	 * Releases the slices of a deleted file.
+	 */
+	void remove(Path file, TreeRoot<byte[]> root) {
+		update(file, root, null);
+	}
+
+	/**
+	 * Moves the references of a file from the previous version of its tree to the next one, either being null when
+	 * the file is new or has been deleted. Only the slices that differ are touched when both trees have the same
+	 * width, otherwise all of them are compared.
+	 */
+	void update(Path file, TreeRoot<byte[]> prev, TreeRoot<byte[]> next) {
+		final int pc = prev != null ? prev.count() : 0;
+		final int nc = next != null ? next.count() : 0;
+		final IntStream changed = pc > 0 && nc > 0 && prev.width() == next.width()
+		        ? next.diff(prev, Arrays::equals)
+		        : IntStream.range(0, max(pc, nc));
+		final Map<Digest, Delta> deltas = new HashMap<>();
+
+		changed.forEach(k -> {
+			if (k < pc) {
+				delta(deltas, prev, k).count--;
+			}
+			if (k < nc) {
+				final Delta d = delta(deltas, next, k);
+
+				d.count++;
+				d.first = min(d.first, k);
+			}
+		});
+
+		deltas.forEach((d, c) -> apply(file, next, d, c));
+	}
+
+	/**
+	 * The files containing a slice with its occurrences in each of them, empty if there is no such slice.
+	 */
+	Map<Path, Holder> files(byte[] hash) {
+		final Slice s = this.slices.get(new Digest(hash));
+
+		return s != null ? unmodifiableMap(s.files) : Collections.emptyMap();
+	}
+
+	int count() {
+		return this.slices.size();
+	}
+
+	long unique() {
+		return this.unique.get();
+	}
+
+	long total() {
+		return this.total.get();
+	}
+
+	private void apply(Path file, TreeRoot<byte[]> next, Digest hash, Delta delta) {
+		final int[] applied = { 0 };
+
+		this.slices.compute(hash, (d, s) -> {
+			if (s == null) {
+				if (delta.count <= 0) {
+					return null;
+				}
+
+				s = new Slice(delta.length);
+
+				this.unique.addAndGet(delta.length);
+			}
+
+			s.files.compute(file, (f, h) -> {
+				final int before = h != null ? h.count : 0;
+				final int count = max(before + delta.count, 0);
+
+				applied[0] = count - before;
+
+				if (count == 0) {
+					return null;
+				}
+
+				int index = h != null ? h.index : Integer.MAX_VALUE;
+
+				// the first occurrence has been replaced, look for the next one
+				if (h != null && next != null && !holds(next, index, d.bytes)) {
+					index = first(next, d.bytes, index + 1);
+				}
+
+				return new Holder(count, min(index, delta.first));
+			});
+
+			if (s.files.isEmpty()) {
+				this.unique.addAndGet(-s.length);
+
+				return null;
+			}
+
+			return s;
+		});
+
+		this.total.addAndGet((long) applied[0] * delta.length);
+	}
+}
@@ -0,0 +1,245 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.copyOfRange;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A Merkle tree that keeps the hashes of each level in a flat array.
+ *
+ * <p>
+ * The node at position <code>i</code> of a level has its children at positions <code>2i</code> and <code>2i+1</code>
+ * of the level below, so leaves and siblings are located by index arithmetic instead of following node links. The last
+ * node of a level with an odd size has no sibling and is promoted as it is to the level above.
+ * </p>
+ *
+ * <p>
+ * When all the hashes of a level above the leaves are byte arrays of the same length, the level is packed into a single
+ * byte array, so it costs only the hash bytes instead of an array object and a reference for each hash; a hash read
+ * from such a level is a copy. The lowest level refers to the hashes of the leaves and the leaves themselves are the
+ * instances given to the builder, so they are not packed; the root is not packed either.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+@SuppressWarnings("unchecked")
+final class ArrayRoot<T> implements IndexedRoot<T> {
+
+	// the hashes of a level one after the other, or the level as it is if they are not byte arrays of the same length
+	static private Object pack(Object[] level) {
+		if (!(level[0] instanceof byte[])) {
+			return level;
+		}
+
+		final int length = ((byte[]) level[0]).length;
+
+		if ((long) level.length * length > Integer.MAX_VALUE - 8) {
+			return level;
+		}
+
+		for (final Object hash : level) {
+			if (!(hash instanceof byte[]) || ((byte[]) hash).length != length) {
+				return level;
+			}
+		}
+
+		final byte[] packed = new byte[level.length * length];
+
+		for (int i = 0; i < level.length; i++) {
+			System.arraycopy(level[i], 0, packed, i * length, length);
+		}
+
+		return packed;
+	}
+
+	// the hashes of each level, from the leaves up to the root, either an Object[] or a packed byte[]
+	private final Object[] levels;
+	// the number of nodes of each level
+	private final int[] widths;
+	private final TreeLeaf<T, ?>[] leaves;
+
+	ArrayRoot(Object[][] levels, TreeLeaf<T, ?>[] leaves) {
+		assert levels.length > 1 : "expecting at least two levels";
+		assert levels[levels.length - 1].length == 1 : "expecting a single root";
+
+		this.levels = new Object[levels.length];
+		this.widths = new int[levels.length];
+		this.leaves = leaves;
+
+		for (int h = 0; h < levels.length; h++) {
+			this.widths[h] = levels[h].length;
+			this.levels[h] = h > 0 && h < levels.length - 1 ? pack(levels[h]) : levels[h];
+		}
+	}
+
+	@Override
+	public T hash() {
+		return (T) ((Object[]) this.levels[this.levels.length - 1])[0];
+	}
+
+	@Override
+	public int height() {
+		return this.levels.length;
+	}
+
+	@Override
+	public int count() {
+		return this.leaves.length;
+	}
+
+	@Override
+	public int width() {
+		return this.widths[0];
+	}
+
+	@Override
+	public T hash(int level, int index) {
+		final Object hashes = this.levels[level];
+
+		if (hashes instanceof byte[]) {
+			if (index < 0 || index >= this.widths[level]) {
+				throw new IndexOutOfBoundsException("Index out of range: " + index);
+			}
+
+			final int length = ((byte[]) hashes).length / this.widths[level];
+
+			return (T) copyOfRange((byte[]) hashes, index * length, index * length + length);
+		}
+
+		return (T) ((Object[]) hashes)[index];
+	}
+
+	@Override
+	public <L extends TreeLeaf<T, ?>> L getLeaf(int index) {
+		if (index < 0) {
+			throw new IllegalArgumentException("Negative index");
+		}
+		if (index >= count()) {
+			return null;
+		}
+
+		return (L) this.leaves[index];
+	}
+
+	@Override
+	public List<T> proof(int index) {
+		if (index < 0) {
+			throw new IllegalArgumentException("Negative index");
+		}
+		if (index >= count()) {
+			return null;
+		}
+
+		final ProofEvent event = TreeEvents.proof();
+		final List<T> chain = chain(index);
+
+		if (event != null) {
+			event.end("chain", 1, count(), chain.size());
+		}
+
+		return unmodifiableList(chain);
+	}
+
+	@Override
+	public int update(int[] indices, TreeLeaf<T, ?>[] leaves, TreeHash<T> hashFn) {
+		for (int k = 0; k < indices.length; k++) {
+			this.leaves[indices[k]] = leaves[k];
+
+			set(0, indices[k], leaves[k].hash);
+		}
+
+		final int[] dirty = indices.clone();
+		int count = dirty.length;
+		int hashes = 0;
+
+		for (int h = 1; h < this.levels.length; h++) {
+			final int below = this.widths[h - 1];
+			int next = 0;
+
+			// the indices are sorted, so siblings are next to each other
+			for (int k = 0; k < count; k++) {
+				final int p = dirty[k] >>> 1;
+
+				if (next > 0 && dirty[next - 1] == p) {
+					continue;
+				}
+
+				if (2 * p + 1 < below) {
+					set(h, p, hashFn.hash(hash(h - 1, 2 * p), hash(h - 1, 2 * p + 1)));
+					hashes++;
+				} else {
+					set(h, p, hash(h - 1, 2 * p));
+				}
+
+				dirty[next++] = p;
+			}
+
+			count = next;
+		}
+
+		return hashes;
+	}
+
+	List<T> chain(int index) {
+		final List<T> chain = new ArrayList<>(this.levels.length + 1);
+
+		chain.add(hash(0, index));
+
+		for (int h = 0; h < this.levels.length - 1; h++, index >>>= 1) {
+			final int sibling = index ^ 1;
+
+			if (sibling < this.widths[h]) {
+				chain.add(hash(h, sibling));
+			}
+		}
+
+		chain.add(hash());
+
+		return chain;
+	}
+
+	private void set(int level, int index, T hash) {
+		final Object hashes = this.levels[level];
+
+		if (hashes instanceof byte[]) {
+			final byte[] packed = (byte[]) hashes;
+			final int length = packed.length / this.widths[level];
+
+			if (hash instanceof byte[] && ((byte[]) hash).length == length) {
+				System.arraycopy(hash, 0, packed, index * length, length);
+
+				return;
+			}
+
+			// a hash of another length, keep a reference for each hash again
+			final Object[] unpacked = new Object[this.widths[level]];
+
+			for (int i = 0; i < unpacked.length; i++) {
+				unpacked[i] = hash(level, i);
+			}
+
+			this.levels[level] = unpacked;
+		}
+
+		((Object[]) this.levels[level])[index] = hash;
+	}
+}
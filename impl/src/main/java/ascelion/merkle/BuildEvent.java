@@ -0,0 +1,92 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the methods of {@link TreeBuilder} that build a tree or change its hashes: <code>build</code>,
+ * <code>restore</code>, <code>rebuild</code> and <code>update</code>.
+ *
+ * @author https://github.com/pa314159
+ */
+@Name("ascelion.merkle.Build")
+@Label("Tree Build")
+@Category("Merkle Tree")
+@Description("Builds a tree from its leaves or recomputes some of its hashes")
+final class BuildEvent extends Event {
+
+	static int hashes(int width) {
+		int hashes = 0;
+
+		// each node above the leaves is hashed, unless it has been promoted
+		for (int w = width; w > 1; w = (w + 1) >>> 1) {
+			hashes += w >>> 1;
+		}
+
+		return hashes;
+	}
+
+	@Label("Kind")
+	@Description("The kind of build: build, restore, rebuild or update")
+	String kind;
+
+	@Label("Leaves")
+	@Description("The number of leaves of the tree")
+	int leaves;
+
+	@Label("Width")
+	@Description("The number of nodes of the lowest level, including the fillers")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Hashes")
+	@Description("The number of hash function calls")
+	int hashes;
+
+	@Label("Compact")
+	boolean compact;
+
+	@Label("Lazy")
+	boolean lazy;
+
+	@Label("Parallel")
+	boolean parallel;
+
+	void end(String kind, int leaves, int width, int height, int hashes, boolean compact, boolean lazy, boolean parallel) {
+		if (shouldCommit()) {
+			this.kind = kind;
+			this.leaves = leaves;
+			this.width = width;
+			this.height = height;
+			this.hashes = hashes;
+			this.compact = compact;
+			this.lazy = lazy;
+			this.parallel = parallel;
+
+			commit();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.function.BiPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Arrays.sort;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Internal operations of the trees built by {@link TreeBuilder}.
+ *
+ * <p>
+ * The nodes are addressed by level and index as described at {@link TreeRoot#hash(int, int)}.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+interface IndexedRoot<T> extends TreeRoot<T> {
+
+	@Override
+	int width();
+
+	@Override
+	T hash(int level, int index);
+
+	@Override
+	List<T> proof(int index);
+
+	@Override
+	default List<T> multiProof(int... indices) {
+		final ProofEvent event = TreeEvents.proof();
+		final int[] known = indices.clone();
+
+		sort(known);
+
+		int count = 0;
+
+		for (int k = 0; k < known.length; k++) {
+			if (known[k] < 0 || known[k] >= count()) {
+				throw new IllegalArgumentException("The index must be between 0 and the number of leaves");
+			}
+			if (count == 0 || known[count - 1] != known[k]) {
+				known[count++] = known[k];
+			}
+		}
+
+		final List<T> proof = new ArrayList<>();
+
+		for (int h = 0, width = width(); width > 1; h++, width = (width + 1) >>> 1) {
+			int next = 0;
+
+			for (int k = 0; k < count; k++) {
+				final int index = known[k];
+				final int sibling = index ^ 1;
+
+				if (sibling < width) {
+					if (k + 1 < count && known[k + 1] == sibling) {
+						// both children are known
+						k++;
+					} else {
+						proof.add(hash(h, sibling));
+					}
+				}
+
+				known[next++] = index >>> 1;
+			}
+
+			count = next;
+		}
+
+		if (event != null) {
+			event.end("multi", indices.length, count(), proof.size());
+		}
+
+		return unmodifiableList(proof);
+	}
+
+	@Override
+	default List<T> rangeProof(int from, int to) {
+		if (from < 0 || from >= to || to > count()) {
+			throw new IllegalArgumentException("The range must be a non empty interval between 0 and the number of leaves");
+		}
+
+		final ProofEvent event = TreeEvents.proof();
+		final List<T> proof = new ArrayList<>();
+		int lo = from;
+		int hi = to - 1;
+
+		// the siblings inside the range are known, so only the boundaries may need a sibling
+		for (int h = 0, width = width(); width > 1; h++, width = (width + 1) >>> 1) {
+			if ((lo & 1) == 1) {
+				proof.add(hash(h, lo - 1));
+			}
+			if ((hi & 1) == 0 && hi + 1 < width) {
+				proof.add(hash(h, hi + 1));
+			}
+
+			lo >>>= 1;
+			hi >>>= 1;
+		}
+
+		if (event != null) {
+			event.end("range", to - from, count(), proof.size());
+		}
+
+		return unmodifiableList(proof);
+	}
+
+	@Override
+	default IntStream diff(TreeRoot<T> other, BiPredicate<T, T> eq) {
+		requireNonNull(other, "The other tree cannot be null");
+		requireNonNull(eq, "The equality operator cannot be null");
+
+		if (other.width() != width()) {
+			throw new IllegalArgumentException("The trees must have the same width");
+		}
+
+		final TreeDiff<T> diff = new TreeDiff<>(this, other, eq);
+
+		return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(diff, TreeDiff.CHARACTERISTICS), false);
+	}
+
+	/**
+	 * Replaces some leaves and recomputes the hashes of their ancestors, each one only once.
+	 *
+	 * @param indices the indices of the leaves, sorted and distinct.
+	 * @param leaves  the new leaves, in the same order.
+	 * @param hashFn  the hash function.
+	 * @return the number of hashed nodes.
+	 */
+	int update(int[] indices, TreeLeaf<T, ?>[] leaves, TreeHash<T> hashFn);
+}
@@ -0,0 +1,64 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the proof methods of {@link TreeRoot}.
+ *
+ * @author https://github.com/pa314159
+ */
+@Name("ascelion.merkle.Proof")
+@Label("Tree Proof")
+@Category("Merkle Tree")
+@Description("Computes the proof of some leaves")
+final class ProofEvent extends Event {
+
+	@Label("Kind")
+	@Description("The kind of proof: chain, multi or range")
+	String kind;
+
+	@Label("Leaves")
+	@Description("The number of proven leaves")
+	int leaves;
+
+	@Label("Count")
+	@Description("The number of leaves of the tree")
+	int count;
+
+	@Label("Size")
+	@Description("The number of hashes of the proof")
+	int size;
+
+	void end(String kind, int leaves, int count, int size) {
+		if (shouldCommit()) {
+			this.kind = kind;
+			this.leaves = leaves;
+			this.count = count;
+			this.size = size;
+
+			commit();
+		}
+	}
+}
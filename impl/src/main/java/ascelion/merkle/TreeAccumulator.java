@@ -0,0 +1,170 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle;
+
+import java.util.function.Supplier;
+
+import static java.lang.Integer.bitCount;
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Computes the root of a Merkle tree from a stream of leaf hashes.
+ *
+ * <p>
+ * The accumulator keeps only the right edge of the tree, that is the roots of the complete subtrees built so far, so
+ * its memory is bounded by O(log n). The resulting root is identical to the one built by the {@link TreeBuilder} that
+ * created this accumulator, provided the supplier of the filler value always returns the same value; the accumulator
+ * uses the shape of the builder too, see {@link TreeBuilder#unbalanced(boolean)}.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+@SuppressWarnings("unchecked")
+public final class TreeAccumulator<T> {
+
+	private final TreeHash<T> hashFn;
+	private final Supplier<T> zero;
+	private final boolean unbalanced;
+
+	// the root of the complete subtree with 2^k leaves at index k, if bit k of count is set
+	private final Object[] frontier = new Object[Integer.SIZE];
+	private int count;
+
+	TreeAccumulator(TreeHash<T> hashFn, Supplier<T> zero, boolean unbalanced) {
+		this.hashFn = hashFn;
+		this.zero = zero;
+		this.unbalanced = unbalanced;
+	}
+
+	/**
+	 * Adds the hash of the next leaf.
+	 *
+	 * @param hash the hash of the leaf.
+	 * @return the instance of this accumulator
+	 */
+	public TreeAccumulator<T> add(T hash) {
+		requireNonNull(hash, "The hash value cannot be null");
+
+		if (this.count == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many leaves");
+		}
+
+		T node = hash;
+		int k = 0;
+
+		// merge the complete subtrees of the same size
+		for (; (this.count & 1 << k) != 0; k++) {
+			node = this.hashFn.hash((T) this.frontier[k], node);
+
+			this.frontier[k] = null;
+		}
+
+		this.frontier[k] = node;
+		this.count++;
+
+		return this;
+	}
+
+	/**
+	 * Gets number of leaves added so far.
+	 *
+	 * @return the leaves count.
+	 */
+	public int count() {
+		return this.count;
+	}
+
+	/**
+	 * Gets the height of the tree built from the leaves added so far.
+	 *
+	 * @return the height of the tree.
+	 */
+	public int height() {
+		checkNotEmpty();
+
+		return 1 + width();
+	}
+
+	/**
+	 * Computes the root hash of the tree built from the leaves added so far; more leaves can be added afterwards.
+	 *
+	 * @return the hash value of the root.
+	 */
+	public T hash() {
+		checkNotEmpty();
+
+		final int width = width();
+
+		if (this.count == 1 << width) {
+			return (T) this.frontier[width];
+		}
+		if (this.unbalanced && this.count > 1) {
+			return promote();
+		}
+
+		// fill the right side of the tree with filler subtrees
+		T fill = this.zero.get();
+		T node = null;
+
+		for (int k = 0; k < width; k++) {
+			final T left = (T) this.frontier[k];
+
+			if (left != null) {
+				node = this.hashFn.hash(left, node != null ? node : fill);
+			} else if (node != null) {
+				node = this.hashFn.hash(node, fill);
+			}
+
+			fill = this.hashFn.hash(fill, fill);
+		}
+
+		return node;
+	}
+
+	// joins the complete subtrees from right to left
+	private T promote() {
+		T node = null;
+
+		for (final Object left : this.frontier) {
+			if (left != null) {
+				node = node != null ? this.hashFn.hash((T) left, node) : (T) left;
+			}
+		}
+
+		return node;
+	}
+
+	// log2 of the number of leaves in the padded tree, which has the same height as the unbalanced one
+	private int width() {
+		if (this.count == 1) {
+			return 1;
+		}
+		if (bitCount(this.count) == 1) {
+			return Integer.SIZE - 1 - numberOfLeadingZeros(this.count);
+		}
+
+		return Integer.SIZE - numberOfLeadingZeros(this.count);
+	}
+
+	private void checkNotEmpty() {
+		if (this.count == 0) {
+			throw new IllegalStateException("No leaf has been added");
+		}
+	}
+}
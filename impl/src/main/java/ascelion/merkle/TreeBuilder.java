@@ -18,11 +18,21 @@
 package ascelion.merkle;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiPredicate;
 import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
@@ -30,6 +40,10 @@ import java.util.stream.Stream;
 import static java.lang.Integer.bitCount;
 import static java.lang.Integer.numberOfLeadingZeros;
 import static java.util.Arrays.asList;
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.newSetFromMap;
+import static java.util.Collections.singletonMap;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -40,6 +54,9 @@ import static java.util.Objects.requireNonNull;
 @SuppressWarnings("unchecked")
 public final class TreeBuilder<T> {
 
+	// the number of nodes below which a parallel build doesn't split the work anymore
+	static private final int FORK_THRESHOLD = 1 << 10;
+
 	static private int next_pow2(int value) {
 		switch (value) {
 		case 0:
@@ -55,9 +72,64 @@ public final class TreeBuilder<T> {
 		return 1 << (Integer.SIZE - numberOfLeadingZeros(value));
 	}
 
-	static class Root<T> extends TreeNode<T> implements TreeRoot<T> {
+	// the number of positions on the lowest level of the tree
+	static int width(int count, boolean unbalanced) {
+		// a single leaf is always paired with a filler
+		return unbalanced ? Math.max(count, 2) : next_pow2(count);
+	}
+
+	// the size of the left subtree of a node covering the given number of positions
+	static private int split(int width) {
+		return Integer.highestOneBit(width - 1);
+	}
+
+	// the key of a node in the map of the verified hashes
+	static private long key(int level, int index) {
+		return (long) level << Integer.SIZE | index;
+	}
+
+	static class Root<T> extends TreeNode<T> implements IndexedRoot<T> {
+		// the number of nodes on the lowest level, including the fillers
+		private final int width;
+
 		Root(T hash, TreeNode<T> left, TreeNode<T> right) {
 			super(hash, left, right);
+
+			// left subtrees are always complete
+			int width = 1;
+
+			for (TreeNode<T> walk = this; walk.left != null; walk = walk.right) {
+				width += 1 << walk.left.height - 1;
+			}
+
+			this.width = width;
+		}
+
+		@Override
+		public final int width() {
+			return this.width;
+		}
+
+		@Override
+		public final T hash(int level, int index) {
+			final int from = index << level;
+			TreeNode<T> walk = this;
+			int lo = 0;
+
+			for (int size = this.width; size > 1 << level;) {
+				final int left = split(size);
+
+				if (from < lo + left) {
+					walk = walk.left;
+					size = left;
+				} else {
+					walk = walk.right;
+					lo += left;
+					size -= left;
+				}
+			}
+
+			return walk.hash;
 		}
 
 		@Override
@@ -81,19 +153,108 @@ public final class TreeBuilder<T> {
 
 			TreeNode<T> walk = this;
 
-			index <<= Integer.SIZE - this.height + 1;
+			// the left subtree is full whenever the right one has leaves
+			while (walk.left != null) {
+				final int left = walk.left.count();
 
-			for (int h = 1; h < this.height; h++, index <<= 1) {
-				assert walk != null : "walk is null at position " + h;
+				if (index < left) {
+					walk = walk.left;
+				} else {
+					walk = walk.right;
+					index -= left;
+				}
+			}
+
+			return (L) walk;
+		}
 
-				if (index < 0) {
+		@Override
+		public final List<T> proof(int index) {
+			if (index < 0) {
+				throw new IllegalArgumentException("Negative index");
+			}
+			if (index >= count()) {
+				return null;
+			}
+
+			final ProofEvent event = TreeEvents.proof();
+
+			// the siblings from the top, the chain may be shorter in unbalanced trees
+			final Object[] path = new Object[this.height];
+			TreeNode<T> walk = this;
+			int size = 0;
+
+			while (walk.left != null) {
+				final int left = walk.left.count();
+
+				if (index < left) {
+					path[size++] = walk.right.hash;
+					walk = walk.left;
+				} else {
+					path[size++] = walk.left.hash;
 					walk = walk.right;
+					index -= left;
+				}
+			}
+
+			final List<T> chain = new ArrayList<>(size + 2);
+
+			chain.add(walk.hash);
+
+			while (size > 0) {
+				chain.add((T) path[--size]);
+			}
+
+			chain.add(this.hash);
+
+			if (event != null) {
+				event.end("chain", 1, count(), chain.size());
+			}
+
+			return unmodifiableList(chain);
+		}
+
+		@Override
+		public final int update(int[] indices, TreeLeaf<T, ?>[] leaves, TreeHash<T> hashFn) {
+			// the nodes to be hashed again, grouped by height
+			final List<Set<TreeNode<T>>> dirty = new ArrayList<>(this.height + 1);
+
+			for (int h = 0; h <= this.height; h++) {
+				dirty.add(newSetFromMap(new IdentityHashMap<>()));
+			}
+
+			for (int k = 0; k < indices.length; k++) {
+				final TreeNode<T> prev = getLeaf(indices[k]);
+				final TreeNode<T> next = leaves[k];
+				final TreeNode<T> parent = prev.parent;
+
+				if (parent.left == prev) {
+					parent.left = next;
 				} else {
-					walk = walk.left;
+					parent.right = next;
 				}
+
+				prev.parent = null;
+				next.parent = parent;
+
+				dirty.get(parent.height).add(parent);
 			}
 
-			return (L) walk;
+			int hashes = 0;
+
+			// parents are always higher than their children
+			for (int h = 2; h <= this.height; h++) {
+				for (final TreeNode<T> node : dirty.get(h)) {
+					node.hash = hashFn.hash(node.left.hash, node.right.hash);
+					hashes++;
+
+					if (node.parent != null) {
+						dirty.get(node.parent.height).add(node.parent);
+					}
+				}
+			}
+
+			return hashes;
 		}
 	}
 
@@ -109,15 +270,39 @@ public final class TreeBuilder<T> {
 		}
 	}
 
+	static private <T> TreeHash<T> concatHash(UnaryOperator<T> hashFn, BinaryOperator<T> concatFn) {
+		requireNonNull(hashFn, "The hash operator cannot be null");
+		requireNonNull(concatFn, "The concatenation operator cannot be null");
+
+		return new TreeHash<T>() {
+			@Override
+			public T hash(T value) {
+				return hashFn.apply(value);
+			}
+
+			@Override
+			public T hash(T left, T right) {
+				return hashFn.apply(concatFn.apply(left, right));
+			}
+		};
+	}
+
 	// the hash function
-	private final UnaryOperator<T> hashFn;
-	// the concatenation function
-	private final BinaryOperator<T> concatFn;
+	private final TreeHash<T> hashFn;
 	// supplier for the value of filler
 	private final Supplier<T> zero;
 
 	private final List<TreeLeaf<T, ?>> collect = new ArrayList<>();
 
+	// the pool used for parallel builds, null to build on the calling thread
+	private ForkJoinPool pool;
+	// whether to build array backed trees
+	private boolean compact;
+	// whether to skip building the validation chains
+	private boolean lazy;
+	// whether to promote the unpaired nodes instead of padding the tree
+	private boolean unbalanced;
+
 	/**
 	 * Constructs a tree builder using the given operators and a supplier of the filler value.
 	 * <p>
@@ -130,9 +315,7 @@ public final class TreeBuilder<T> {
 	 * @param zero     supplier of the filler value
 	 */
 	public TreeBuilder(UnaryOperator<T> hashFn, BinaryOperator<T> concatFn, Supplier<T> zero) {
-		this.hashFn = requireNonNull(hashFn, "The hash operator cannot be null");
-		this.concatFn = requireNonNull(concatFn, "The concatenation operator cannot be null");
-		this.zero = requireNonNull(zero, "The supplier of the filler value cannot be null");
+		this(concatHash(hashFn, concatFn), zero);
 	}
 
 	/**
@@ -150,6 +333,104 @@ public final class TreeBuilder<T> {
 		this(hashFn, concatFn, () -> zero);
 	}
 
+	/**
+	 * Constructs a tree builder using the given hash function and a supplier of the filler value.
+	 * <p>
+	 * The hash function computes the hash of the internal nodes directly from the hashes of their children, which
+	 * avoids allocating their concatenation; see {@link ascelion.merkle.help.DigestHash} for an implementation for
+	 * byte[].
+	 * </p>
+	 *
+	 * @param hashFn the hash function
+	 * @param zero   supplier of the filler value
+	 */
+	public TreeBuilder(TreeHash<T> hashFn, Supplier<T> zero) {
+		this.hashFn = requireNonNull(hashFn, "The hash function cannot be null");
+		this.zero = requireNonNull(zero, "The supplier of the filler value cannot be null");
+	}
+
+	/**
+	 * Constructs a tree builder using the given hash function and a constant filler value.
+	 *
+	 * @param hashFn the hash function
+	 * @param zero   the filler value
+	 */
+	public TreeBuilder(TreeHash<T> hashFn, T zero) {
+		this(hashFn, () -> zero);
+	}
+
+	/**
+	 * Sets the pool used to build trees in parallel.
+	 * <p>
+	 * When a pool is set, the leaves are split into subtrees that are hashed concurrently and joined at the top levels.
+	 * The resulting tree is identical to the one built sequentially, but the hash and concatenation operators must be
+	 * thread safe. Passing null restores the sequential build.
+	 * </p>
+	 *
+	 * @param pool the fork/join pool or null
+	 * @return the instance of this builder
+	 */
+	public TreeBuilder<T> parallel(ForkJoinPool pool) {
+		this.pool = pool;
+
+		return this;
+	}
+
+	/**
+	 * Selects the memory layout of the trees built by this builder.
+	 * <p>
+	 * A compact tree keeps the hashes of each level in a flat array instead of linking a node object for each hash;
+	 * leaves and siblings are then located by index arithmetic. When the hashes are byte arrays of the same length,
+	 * such as those of {@link ascelion.merkle.help.DigestHash}, each level above the leaves is packed into a single byte
+	 * array and costs only the hash bytes. The leaves are the instances passed to the builder and keep their own
+	 * hashes. Both layouts produce the same root and the same validation chains.
+	 * </p>
+	 *
+	 * @param compact true to build array backed trees
+	 * @return the instance of this builder
+	 */
+	public TreeBuilder<T> compact(boolean compact) {
+		this.compact = compact;
+
+		return this;
+	}
+
+	/**
+	 * Selects whether the validation chains are computed when the tree is built or only on request.
+	 * <p>
+	 * By default the builder fills the chain of every leaf, which costs O(n log n) time and memory. A lazy builder
+	 * leaves the chains empty and the tree is built in O(n); the chain of a leaf is then available through
+	 * {@link TreeRoot#proof(int)}.
+	 * </p>
+	 *
+	 * @param lazy true to skip building the validation chains
+	 * @return the instance of this builder
+	 */
+	public TreeBuilder<T> lazy(boolean lazy) {
+		this.lazy = lazy;
+
+		return this;
+	}
+
+	/**
+	 * Selects the shape of the trees built by this builder.
+	 * <p>
+	 * By default the number of leaves is rounded up to the next power of two and the tree is padded with filler nodes.
+	 * An unbalanced tree promotes the last node of a level to the next level when it has no sibling, the same way as
+	 * the trees of RFC 6962, so no filler is hashed except for a tree with a single leaf. The validation chains of an
+	 * unbalanced tree skip the levels where a node has been promoted and they must be checked with
+	 * {@link #isValid(List, int, int, BiPredicate)}.
+	 * </p>
+	 *
+	 * @param unbalanced true to promote unpaired nodes instead of padding
+	 * @return the instance of this builder
+	 */
+	public TreeBuilder<T> unbalanced(boolean unbalanced) {
+		this.unbalanced = unbalanced;
+
+		return this;
+	}
+
 	/**
 	 * Convenient method to collect leaves; user must then call {@link #build()} to build the tree.
 	 *
@@ -249,23 +530,240 @@ public final class TreeBuilder<T> {
 			throw new IllegalArgumentException("Cannot build a tree from no node");
 		}
 
-		// round to the next power of two to have sufficient height
-		final int rounded = next_pow2(size);
-		final TreeNode<T>[] floor = leaves.toArray(new TreeNode[rounded]);
+		final BuildEvent event = TreeEvents.build();
 
-		if (rounded > size) {
-			for (int i = floor.length; floor[--i] == null;) {
-				floor[i] = new Null<>(this.zero.get());
+		// round to the next power of two to have sufficient height, unless unbalanced
+		final int rounded = width(size, this.unbalanced);
+
+		final TreeLeaf<T, ?>[] array = leaves.toArray(new TreeLeaf[size]);
+		final TreeRoot<T> root = this.compact ? buildArray(array, rounded) : buildLinked(array, rounded);
+
+		if (event != null) {
+			event.end("build", size, rounded, root.height(), BuildEvent.hashes(rounded), this.compact, this.lazy, this.pool != null);
+		}
+
+		return root;
+	}
+
+	/**
+	 * Recreates a tree from its leaves and the previously computed hashes of the upper levels, without hashing.
+	 * <p>
+	 * The levels are those described at {@link TreeRoot#hash(int, int)}, starting with level 1, as saved from a tree
+	 * built earlier. The hashes are trusted, so they must have been computed with the same hash function and with the
+	 * same value of {@link #unbalanced(boolean)}. The tree always has the compact
+	 * layout and takes the ownership of the arrays.
+	 * </p>
+	 *
+	 * @param leaves the array of leaves.
+	 * @param levels the hashes of the levels above the leaves, up to the root.
+	 * @return the tree
+	 */
+	public TreeRoot<T> restore(TreeLeaf<T, ?>[] leaves, List<T[]> levels) {
+		requireNonNull(leaves, "The array of leaves cannot be null");
+		requireNonNull(levels, "The list of levels cannot be null");
+
+		if (leaves.length == 0) {
+			throw new IllegalArgumentException("Cannot build a tree from no node");
+		}
+
+		final BuildEvent event = TreeEvents.build();
+		final int rounded = width(leaves.length, this.unbalanced);
+		final Object[][] array = new Object[levels.size() + 1][];
+		int width = rounded;
+
+		for (int h = 1; h < array.length; h++) {
+			width = (width + 1) >>> 1;
+
+			array[h] = requireNonNull(levels.get(h - 1), "The level cannot be null");
+
+			if (array[h].length != width) {
+				throw new IllegalArgumentException("The levels don't match the number of leaves");
 			}
 		}
+		if (width != 1) {
+			throw new IllegalArgumentException("The levels don't match the number of leaves");
+		}
 
-		final TreeRoot<T> root = doBuild(floor);
+		final Object[] floor = array[0] = new Object[rounded];
 
-		leaves.forEach(TreeLeaf::buildChain);
+		for (int i = 0; i < leaves.length; i++) {
+			floor[i] = leaves[i].hash;
+		}
+		for (int i = rounded - 1; i >= leaves.length; i--) {
+			floor[i] = this.zero.get();
+		}
+
+		final ArrayRoot<T> root = new ArrayRoot<>(array, leaves.clone());
+
+		if (!this.lazy) {
+			forEach(i -> leaves[i].buildChain(root.chain(i)), leaves.length);
+		}
+		if (event != null) {
+			event.end("restore", leaves.length, rounded, array.length, 0, true, this.lazy, this.pool != null);
+		}
 
 		return root;
 	}
 
+	/**
+	 * Replaces the leaf at the given index of a tree and recomputes the hashes on the path to the root, in O(log n).
+	 *
+	 * @param root  the tree, built by a lazy builder
+	 * @param index the leaf index
+	 * @param leaf  the new leaf
+	 * @return the updated tree
+	 * @see #update(TreeRoot, Map)
+	 */
+	public TreeRoot<T> update(TreeRoot<T> root, int index, TreeLeaf<T, ?> leaf) {
+		return update(root, singletonMap(index, leaf));
+	}
+
+	/**
+	 * Replaces some leaves of a tree and recomputes the hashes on their paths to the root.
+	 * <p>
+	 * The tree is updated in place and the ancestors shared by several leaves are hashed only once. Only trees built by
+	 * a lazy builder can be updated, because the validation chains of all leaves would become stale; their proofs must
+	 * be computed with {@link TreeRoot#proof(int)}. The tree must not be read by other threads during the update and
+	 * the new leaves must not belong to another tree.
+	 * </p>
+	 *
+	 * @param root   the tree, built by a lazy builder
+	 * @param leaves the new leaves, by index
+	 * @return the updated tree
+	 */
+	public TreeRoot<T> update(TreeRoot<T> root, Map<Integer, TreeLeaf<T, ?>> leaves) {
+		requireNonNull(root, "The tree cannot be null");
+		requireNonNull(leaves, "The map of leaves cannot be null");
+
+		if (!(root instanceof IndexedRoot)) {
+			throw new IllegalArgumentException("The tree hasn't been built by a TreeBuilder");
+		}
+		if (!root.getLeaf(0).getChain().isEmpty()) {
+			throw new IllegalStateException("Only trees built by a lazy builder can be updated");
+		}
+
+		final BuildEvent event = TreeEvents.build();
+		final int[] indices = new int[leaves.size()];
+		final TreeLeaf<T, ?>[] array = new TreeLeaf[indices.length];
+		int k = 0;
+
+		for (final Map.Entry<Integer, TreeLeaf<T, ?>> ent : new TreeMap<>(leaves).entrySet()) {
+			final int index = ent.getKey();
+
+			if (index < 0 || index >= root.count()) {
+				throw new IllegalArgumentException("The index must be between 0 and the number of leaves");
+			}
+
+			indices[k] = index;
+			array[k++] = requireNonNull(ent.getValue(), "The leaf cannot be null");
+		}
+
+		final int hashes = ((IndexedRoot<T>) root).update(indices, array, this.hashFn);
+
+		if (event != null) {
+			event.end("update", root.count(), root.width(), root.height(), hashes, root instanceof ArrayRoot, true, false);
+		}
+
+		return root;
+	}
+
+	/**
+	 * Creates a Merkle tree from an array of leaves, reusing the hashes of a previous tree for the subtrees whose leaves
+	 * have not changed.
+	 * <p>
+	 * A leaf has changed if its hash differs from the hash of the leaf at the same index of the previous tree, or if it
+	 * doesn't exist in the previous tree; only the ancestors of the changed leaves and of the fillers are hashed, so
+	 * changing or appending k leaves costs O(k log n) hashes. Unlike {@link #update(TreeRoot, Map)}, the previous tree
+	 * is not modified and can be used by other threads in the meantime. The previous tree must have been built with the
+	 * same configuration; the result has the compact layout.
+	 * </p>
+	 *
+	 * @param root   the previous tree
+	 * @param leaves the array of leaves
+	 * @param eq     equality operator for &lt;T&gt;
+	 * @return the tree
+	 */
+	public TreeRoot<T> rebuild(TreeRoot<T> root, TreeLeaf<T, ?>[] leaves, BiPredicate<T, T> eq) {
+		requireNonNull(root, "The tree cannot be null");
+		requireNonNull(leaves, "The array of leaves cannot be null");
+
+		if (leaves.length == 0) {
+			throw new IllegalArgumentException("Cannot build a tree from no node");
+		}
+
+		final BuildEvent event = TreeEvents.build();
+		final int rounded = width(leaves.length, this.unbalanced);
+		final int common = Math.min(leaves.length, root.count());
+		int hashes = 0;
+		int height = 1;
+
+		for (int width = rounded; width > 1; width = (width + 1) >>> 1) {
+			height++;
+		}
+
+		final Object[][] levels = new Object[height][];
+		final Object[] floor = levels[0] = new Object[rounded];
+		boolean[] dirty = new boolean[rounded];
+
+		for (int i = 0; i < leaves.length; i++) {
+			floor[i] = leaves[i].hash;
+			dirty[i] = i >= common || !eq.test(leaves[i].hash, root.hash(0, i));
+		}
+		for (int i = rounded - 1; i >= leaves.length; i--) {
+			floor[i] = this.zero.get();
+			dirty[i] = true;
+		}
+
+		for (int h = 1; h < levels.length; h++) {
+			final int level = h;
+			final Object[] below = levels[h - 1];
+			final Object[] above = levels[h] = new Object[(below.length + 1) / 2];
+			final boolean[] changed = dirty;
+			final boolean[] next = dirty = new boolean[above.length];
+
+			// a clean node covers a complete subtree of unchanged leaves, so it has the same hash in both trees
+			forEach(i -> {
+				if (changed[2 * i] || 2 * i + 1 >= below.length || changed[2 * i + 1] || (i + 1L << level) > common) {
+					above[i] = 2 * i + 1 < below.length
+					        ? hash((T) below[2 * i], (T) below[2 * i + 1])
+					        : below[2 * i];
+					next[i] = true;
+				} else {
+					above[i] = root.hash(level, i);
+				}
+			}, above.length);
+
+			if (event != null) {
+				// the last node of an odd level is promoted, not hashed
+				for (int i = 0; i < below.length >>> 1; i++) {
+					if (next[i]) {
+						hashes++;
+					}
+				}
+			}
+		}
+
+		final ArrayRoot<T> tree = new ArrayRoot<>(levels, leaves.clone());
+
+		if (!this.lazy) {
+			forEach(i -> leaves[i].buildChain(tree.chain(i)), leaves.length);
+		}
+		if (event != null) {
+			event.end("rebuild", leaves.length, rounded, height, hashes, true, this.lazy, this.pool != null);
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Creates an accumulator that computes the root of a tree from a stream of leaf hashes, without keeping the leaves.
+	 *
+	 * @return the accumulator
+	 */
+	public TreeAccumulator<T> accumulator() {
+		return new TreeAccumulator<>(this.hashFn, this.zero, this.unbalanced);
+	}
+
 	/**
 	 * Calculates the hash of the input value using the hash operator of this builder.
 	 *
@@ -273,61 +771,508 @@ public final class TreeBuilder<T> {
 	 * @return the hash value of the input value.
 	 */
 	public T hash(T value) {
-		return this.hashFn.apply(value);
+		return this.hashFn.hash(value);
 	}
 
 	/**
 	 * Checks whether a hash chain is valid using the operators of this builder instance.
 	 *
 	 * The chain must contain both the hash of the node and the hash of the root as described at
-	 * {@link TreeLeaf#getChain()}.
+	 * {@link TreeLeaf#getChain()}. This method cannot check the chains of unbalanced trees, because the levels where a
+	 * node has been promoted depend on the number of leaves.
 	 *
 	 * @param chain the validation chain
 	 * @param index index of the current leaf
 	 * @param eq    equality operator for &lt;T&gt;
 	 * @return true if the chain is valid
+	 * @see #isValid(List, int, int, BiPredicate)
 	 */
 	public boolean isValid(List<T> chain, int index, BiPredicate<T, T> eq) {
 		requireNonNull(chain, "The validation chain cannot be null");
 		requireNonNull(eq, "The equality operator cannot be null");
 
+		if (this.unbalanced) {
+			throw new IllegalStateException("The number of leaves is required to validate unbalanced trees");
+		}
 		if (chain.size() < 2) {
 			throw new IllegalArgumentException("Chain too short");
 		}
 
+		final VerifyEvent event = TreeEvents.verify();
 		T hash = chain.get(0);
 
 		for (int k = 1; k < chain.size() - 1; k++) {
 			final T next = chain.get(k);
 
 			if ((index & 1) == 0) {
-				hash = hash(this.concatFn.apply(hash, next));
+				hash = hash(hash, next);
 			} else {
-				hash = hash(this.concatFn.apply(next, hash));
+				hash = hash(next, hash);
 			}
 
 			index >>>= 1;
 		}
 
-		return eq.test(hash, chain.get(chain.size() - 1));
+		final boolean valid = eq.test(hash, chain.get(chain.size() - 1));
+
+		return event != null ? event.end("chain", 1, 0, valid) : valid;
+	}
+
+	/**
+	 * Checks whether a multi-proof is valid, using the operators and the shape of this builder instance.
+	 *
+	 * @param leaves the hashes of the leaves, by index
+	 * @param proof  the multi-proof as returned by {@link TreeRoot#multiProof(int...)}
+	 * @param count  the number of leaves in the tree
+	 * @param root   the hash of the root
+	 * @param eq     equality operator for &lt;T&gt;
+	 * @return true if the proof is valid
+	 */
+	public boolean isValid(Map<Integer, T> leaves, List<T> proof, int count, T root, BiPredicate<T, T> eq) {
+		requireNonNull(leaves, "The map of leaves cannot be null");
+		requireNonNull(proof, "The proof cannot be null");
+		requireNonNull(root, "The root hash cannot be null");
+		requireNonNull(eq, "The equality operator cannot be null");
+
+		if (leaves.isEmpty()) {
+			throw new IllegalArgumentException("No leaf to validate");
+		}
+
+		final int[] indices = new int[leaves.size()];
+		final Object[] hashes = new Object[indices.length];
+		int size = 0;
+
+		for (final Map.Entry<Integer, T> ent : new TreeMap<>(leaves).entrySet()) {
+			if (ent.getKey() < 0 || ent.getKey() >= count) {
+				throw new IllegalArgumentException("The index must be between 0 and the number of leaves");
+			}
+
+			indices[size] = ent.getKey();
+			hashes[size++] = requireNonNull(ent.getValue(), "The hash value cannot be null");
+		}
+
+		final VerifyEvent event = TreeEvents.verify();
+		final boolean valid = isValid(indices, hashes, proof, count, root, eq);
+
+		return event != null ? event.end("multi", size, count, valid) : valid;
 	}
 
-	private Root<T> doBuild(TreeNode<T>[] nodes) {
-		// expecting a power of two
-		assert bitCount(nodes.length) == 1;
+	/**
+	 * Checks whether the proof of a range of leaves is valid, using the operators and the shape of this builder
+	 * instance.
+	 *
+	 * @param from   the index of the first leaf
+	 * @param leaves the hashes of the leaves in the range
+	 * @param proof  the range proof as returned by {@link TreeRoot#rangeProof(int, int)}
+	 * @param count  the number of leaves in the tree
+	 * @param root   the hash of the root
+	 * @param eq     equality operator for &lt;T&gt;
+	 * @return true if the proof is valid
+	 */
+	public boolean isValid(int from, List<T> leaves, List<T> proof, int count, T root, BiPredicate<T, T> eq) {
+		requireNonNull(leaves, "The list of leaves cannot be null");
+		requireNonNull(proof, "The proof cannot be null");
+		requireNonNull(root, "The root hash cannot be null");
+		requireNonNull(eq, "The equality operator cannot be null");
+
+		if (leaves.isEmpty()) {
+			throw new IllegalArgumentException("No leaf to validate");
+		}
+		if (from < 0 || from + leaves.size() > count) {
+			throw new IllegalArgumentException("The range must be between 0 and the number of leaves");
+		}
+
+		final int[] indices = new int[leaves.size()];
+		final Object[] hashes = new Object[indices.length];
+
+		for (int k = 0; k < indices.length; k++) {
+			indices[k] = from + k;
+			hashes[k] = requireNonNull(leaves.get(k), "The hash value cannot be null");
+		}
+
+		final VerifyEvent event = TreeEvents.verify();
+		final boolean valid = isValid(indices, hashes, proof, count, root, eq);
+
+		return event != null ? event.end("range", indices.length, count, valid) : valid;
+	}
+
+	// checks a multi-proof of the leaves with sorted and distinct indices; the arrays are overwritten
+	private boolean isValid(int[] indices, Object[] hashes, List<T> proof, int count, T root, BiPredicate<T, T> eq) {
+		int size = indices.length;
+
+		final Iterator<T> next = proof.iterator();
+
+		for (int width = width(count, this.unbalanced); width > 1; width = (width + 1) >>> 1) {
+			int known = 0;
+
+			for (int k = 0; k < size; k++) {
+				final int index = indices[k];
+				final int sibling = index ^ 1;
+				T hash = (T) hashes[k];
+
+				if (sibling < width) {
+					if (k + 1 < size && indices[k + 1] == sibling) {
+						hash = hash(hash, (T) hashes[++k]);
+					} else if (!next.hasNext()) {
+						return false;
+					} else if ((index & 1) == 0) {
+						hash = hash(hash, next.next());
+					} else {
+						hash = hash(next.next(), hash);
+					}
+				}
+
+				indices[known] = index >>> 1;
+				hashes[known++] = hash;
+			}
+
+			size = known;
+		}
+
+		return !next.hasNext() && eq.test((T) hashes[0], root);
+	}
+
+	/**
+	 * Checks whether a hash chain is valid for a tree with the given number of leaves, using the operators and the
+	 * shape of this builder instance.
+	 *
+	 * The chain must contain both the hash of the node and the hash of the root as described at
+	 * {@link TreeLeaf#getChain()}.
+	 *
+	 * @param chain the validation chain
+	 * @param index index of the current leaf
+	 * @param count the number of leaves in the tree
+	 * @param eq    equality operator for &lt;T&gt;
+	 * @return true if the chain is valid
+	 */
+	public boolean isValid(List<T> chain, int index, int count, BiPredicate<T, T> eq) {
+		requireNonNull(chain, "The validation chain cannot be null");
+		requireNonNull(eq, "The equality operator cannot be null");
+
+		if (index < 0 || index >= count) {
+			throw new IllegalArgumentException("The index must be between 0 and the number of leaves");
+		}
+		if (chain.size() < 2) {
+			throw new IllegalArgumentException("Chain too short");
+		}
+
+		final VerifyEvent event = TreeEvents.verify();
+		final boolean valid = isValidChain(chain, index, count, eq);
+
+		return event != null ? event.end("chain", 1, count, valid) : valid;
+	}
+
+	private boolean isValidChain(List<T> chain, int index, int count, BiPredicate<T, T> eq) {
+		final int last = chain.size() - 1;
+		T hash = chain.get(0);
+		int k = 1;
+
+		for (int width = width(count, this.unbalanced); width > 1; width = (width + 1) >>> 1, index >>>= 1) {
+			final boolean odd = (index & 1) != 0;
+
+			if (!odd && index + 1 == width) {
+				// promoted, no sibling on this level
+				continue;
+			}
+			if (k == last) {
+				return false;
+			}
+
+			final T next = chain.get(k++);
+
+			if (odd) {
+				hash = hash(next, hash);
+			} else {
+				hash = hash(hash, next);
+			}
+		}
+
+		return k == last && eq.test(hash, chain.get(last));
+	}
+
+	/**
+	 * Checks many hash chains of the same tree at once, using the operators and the shape of this builder instance.
+	 * <p>
+	 * The hashes of the nodes validated by a chain are remembered, so the other chains stop at the first ancestor
+	 * that has been already validated instead of hashing up to the root. The chains are checked in parallel when the
+	 * builder has a pool.
+	 * </p>
+	 *
+	 * @param chains  the validation chains, as described at {@link TreeLeaf#getChain()}
+	 * @param indices the indices of the leaves, in the same order as the chains
+	 * @param count   the number of leaves in the tree
+	 * @param root    the hash of the root
+	 * @param eq      equality operator for &lt;T&gt;
+	 * @return the set of the positions of the valid chains
+	 * @see #parallel(ForkJoinPool)
+	 */
+	public BitSet validate(List<List<T>> chains, int[] indices, int count, T root, BiPredicate<T, T> eq) {
+		requireNonNull(chains, "The list of chains cannot be null");
+		requireNonNull(indices, "The array of indices cannot be null");
+		requireNonNull(root, "The root hash cannot be null");
+		requireNonNull(eq, "The equality operator cannot be null");
+
+		if (chains.size() != indices.length) {
+			throw new IllegalArgumentException("The number of chains must match the number of indices");
+		}
+
+		final VerifyEvent event = TreeEvents.verify();
+		final Map<Long, T> verified = new ConcurrentHashMap<>();
+		final boolean[] valid = new boolean[indices.length];
+
+		forEach(k -> valid[k] = validate(chains.get(k), indices[k], count, root, eq, verified), indices.length);
+
+		final BitSet result = new BitSet(valid.length);
 
-		for (int count = nodes.length; count > 2; count /= 2) {
+		for (int k = 0; k < valid.length; k++) {
+			if (valid[k]) {
+				result.set(k);
+			}
+		}
+
+		if (event != null) {
+			event.end("batch", valid.length, count, result.cardinality() == valid.length);
+		}
+
+		return result;
+	}
+
+	private boolean validate(List<T> chain, int index, int count, T root, BiPredicate<T, T> eq, Map<Long, T> verified) {
+		if (chain == null || index < 0 || index >= count) {
+			return false;
+		}
+
+		final int first = width(count, this.unbalanced);
+		int height = 1;
+		int size = 2;
+
+		// the expected length of the chain
+		for (int width = first, i = index; width > 1; width = (width + 1) >>> 1, i >>>= 1) {
+			height++;
+
+			if ((i & 1) != 0 || i + 1 < width) {
+				size++;
+			}
+		}
+
+		if (chain.size() != size || !eq.test(chain.get(size - 1), root)) {
+			return false;
+		}
+
+		final Object[] path = new Object[height];
+		final Object[] siblings = new Object[height];
+		T hash = chain.get(0);
+
+		// the memo only saves hashing: a node equal to a verified one whose sibling is also verified has a verified parent
+		for (int h = 0, width = first, i = index, k = 1; width > 1; h++, width = (width + 1) >>> 1, i >>>= 1) {
+			final T known = verified.get(key(h, i));
+
+			if (known != null && !eq.test(hash, known)) {
+				return false;
+			}
+
+			path[h] = hash;
+
+			final boolean odd = (i & 1) != 0;
+
+			if (!odd && i + 1 >= width) {
+				// promoted
+				continue;
+			}
+
+			final T sibling = chain.get(k++);
+			final T knownSibling = known != null ? verified.get(key(h, i ^ 1)) : null;
+
+			siblings[h] = sibling;
+
+			if (knownSibling != null) {
+				if (!eq.test(sibling, knownSibling)) {
+					return false;
+				}
+
+				final T parent = verified.get(key(h + 1, i >>> 1));
+
+				if (parent != null) {
+					hash = parent;
+
+					continue;
+				}
+			}
+
+			hash = odd ? hash(sibling, hash) : hash(hash, sibling);
+		}
+
+		if (!eq.test(hash, root)) {
+			return false;
+		}
+
+		path[height - 1] = hash;
+
+		// the siblings are authenticated by the root as well
+		for (int h = 0, i = index; h < height; h++, i >>>= 1) {
+			verified.putIfAbsent(key(h, i), (T) path[h]);
+
+			if (siblings[h] != null) {
+				verified.putIfAbsent(key(h, i ^ 1), (T) siblings[h]);
+			}
+		}
+
+		return true;
+	}
+
+	private TreeRoot<T> buildLinked(TreeLeaf<T, ?>[] array, int rounded) {
+		final int size = array.length;
+		final TreeNode<T>[] floor = copyOf(array, rounded, TreeNode[].class);
+
+		if (rounded > size) {
+			for (int i = floor.length; floor[--i] == null;) {
+				floor[i] = new Null<>(this.zero.get());
+			}
+		}
+
+		final TreeRoot<T> root = (Root<T>) (this.pool == null || rounded <= FORK_THRESHOLD
+		        ? doBuild(floor, 0, rounded, true)
+		        : this.pool.invoke(new Subtree(floor, 0, rounded, true)));
+
+		if (!this.lazy) {
+			forEach(i -> array[i].buildChain(), size);
+		}
+
+		return root;
+	}
+
+	private TreeRoot<T> buildArray(TreeLeaf<T, ?>[] leaves, int rounded) {
+		int height = 1;
+
+		for (int width = rounded; width > 1; width = (width + 1) >>> 1) {
+			height++;
+		}
+
+		final Object[][] levels = new Object[height][];
+		final Object[] floor = levels[0] = new Object[rounded];
+
+		for (int i = 0; i < leaves.length; i++) {
+			floor[i] = leaves[i].hash;
+		}
+		for (int i = rounded - 1; i >= leaves.length; i--) {
+			floor[i] = this.zero.get();
+		}
+
+		for (int h = 1; h < levels.length; h++) {
+			final Object[] below = levels[h - 1];
+			final Object[] level = levels[h] = new Object[(below.length + 1) / 2];
+
+			forEach(i -> level[i] = 2 * i + 1 < below.length
+			        ? hash((T) below[2 * i], (T) below[2 * i + 1])
+			        : below[2 * i], level.length);
+		}
+
+		final ArrayRoot<T> root = new ArrayRoot<>(levels, leaves);
+
+		if (!this.lazy) {
+			forEach(i -> leaves[i].buildChain(root.chain(i)), leaves.length);
+		}
+
+		return root;
+	}
+
+	// runs the action for all indices in [0, count), on the pool if any
+	private void forEach(IntConsumer action, int count) {
+		if (this.pool == null || count <= FORK_THRESHOLD) {
+			for (int i = 0; i < count; i++) {
+				action.accept(i);
+			}
+		} else {
+			this.pool.invoke(new ForEach(action, 0, count));
+		}
+	}
+
+	private TreeNode<T> doBuild(TreeNode<T>[] nodes, int from, int to, boolean root) {
+		if (to - from == 1) {
+			// the right subtree of an unbalanced tree
+			assert !root;
+
+			return nodes[from];
+		}
+
+		for (int count = to - from; count > 2; count = (count + 1) / 2) {
 			for (int i = 0; i < count; i += 2) {
-				nodes[i / 2] = newNode(nodes[i], nodes[i + 1], false);
+				// promote the last node when it has no sibling
+				nodes[from + i / 2] = i + 1 < count
+				        ? newNode(nodes[from + i], nodes[from + i + 1], false)
+				        : nodes[from + i];
 			}
 		}
 
-		return newNode(nodes[0], nodes[1], true);
+		return newNode(nodes[from], nodes[from + 1], root);
 	}
 
 	private <N extends TreeNode<T>> N newNode(TreeNode<T> left, TreeNode<T> right, boolean root) {
-		final T h = hash(this.concatFn.apply(left.hash, right.hash));
+		final T h = hash(left.hash, right.hash);
 
 		return root ? (N) new Root<>(h, left, right) : (N) new TreeNode<>(h, left, right);
 	}
+
+	private T hash(T left, T right) {
+		return this.hashFn.hash(left, right);
+	}
+
+	// builds the subtree of the range [from, to), splitting it until it gets small enough
+	@SuppressWarnings("serial")
+	private final class Subtree extends RecursiveTask<TreeNode<T>> {
+		private final TreeNode<T>[] nodes;
+		private final int from;
+		private final int to;
+		private final boolean root;
+
+		Subtree(TreeNode<T>[] nodes, int from, int to, boolean root) {
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.root = root;
+		}
+
+		@Override
+		protected TreeNode<T> compute() {
+			if (this.to - this.from <= FORK_THRESHOLD) {
+				return doBuild(this.nodes, this.from, this.to, this.root);
+			}
+
+			final int half = this.from + split(this.to - this.from);
+			final Subtree left = new Subtree(this.nodes, this.from, half, false);
+
+			left.fork();
+
+			final TreeNode<T> right = new Subtree(this.nodes, half, this.to, false).compute();
+
+			return newNode(left.join(), right, this.root);
+		}
+	}
+
+	// runs an action for the indices in the range [from, to)
+	@SuppressWarnings("serial")
+	static private final class ForEach extends RecursiveAction {
+		private final IntConsumer action;
+		private final int from;
+		private final int to;
+
+		ForEach(IntConsumer action, int from, int to) {
+			this.action = action;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= FORK_THRESHOLD) {
+				for (int i = this.from; i < this.to; i++) {
+					this.action.accept(i);
+				}
+			} else {
+				final int half = (this.from + this.to) >>> 1;
+
+				invokeAll(new ForEach(this.action, this.from, half), new ForEach(this.action, half, this.to));
+			}
+		}
+	}
 }
@@ -0,0 +1,113 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.BiPredicate;
+
+/**
+ * Iterates the indices of the different leaves of two trees with the same width.
+ *
+ * <p>
+ * The nodes are visited depth first from left to right, so the indices come in ascending order; a pending node is
+ * kept on a stack as its level and index, and the stack never holds more than one node per level plus one.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+final class TreeDiff<T> implements PrimitiveIterator.OfInt {
+
+	static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+
+	private final TreeRoot<T> left;
+	private final TreeRoot<T> right;
+	private final BiPredicate<T, T> eq;
+
+	// the number of nodes of each level
+	private final int[] widths;
+
+	private final int[] levels;
+	private final int[] indices;
+	private int top;
+
+	private int next = -1;
+
+	TreeDiff(TreeRoot<T> left, TreeRoot<T> right, BiPredicate<T, T> eq) {
+		this.left = left;
+		this.right = right;
+		this.eq = eq;
+		this.widths = new int[left.height()];
+
+		for (int h = 0, width = left.width(); h < this.widths.length; h++, width = (width + 1) >>> 1) {
+			this.widths[h] = width;
+		}
+
+		this.levels = new int[this.widths.length + 1];
+		this.indices = new int[this.widths.length + 1];
+
+		push(this.widths.length - 1, 0);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (this.next < 0 && this.top > 0) {
+			this.top--;
+
+			final int level = this.levels[this.top];
+			final int index = this.indices[this.top];
+
+			if (this.eq.test(this.left.hash(level, index), this.right.hash(level, index))) {
+				continue;
+			}
+
+			if (level == 0) {
+				this.next = index;
+			} else {
+				if (2 * index + 1 < this.widths[level - 1]) {
+					push(level - 1, 2 * index + 1);
+				}
+
+				push(level - 1, 2 * index);
+			}
+		}
+
+		return this.next >= 0;
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final int index = this.next;
+
+		this.next = -1;
+
+		return index;
+	}
+
+	private void push(int level, int index) {
+		this.levels[this.top] = level;
+		this.indices[this.top] = index;
+		this.top++;
+	}
+}
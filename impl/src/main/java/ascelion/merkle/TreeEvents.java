@@ -0,0 +1,83 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle;
+
+/**
+ * Creates the flight recorder events of this package.
+ *
+ * <p>
+ * The events are created only when the runtime provides the flight recorder, so that the event classes are never loaded
+ * on a runtime without it; the factory methods return null otherwise. An event that is not enabled by a recording is
+ * not committed, so its cost is the one of an allocation the compiler usually removes.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+final class TreeEvents {
+	static final boolean ENABLED = available();
+
+	static private boolean available() {
+		try {
+			Class.forName("jdk.jfr.Event", false, TreeEvents.class.getClassLoader());
+
+			return true;
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	static BuildEvent build() {
+		if (!ENABLED) {
+			return null;
+		}
+
+		final BuildEvent event = new BuildEvent();
+
+		event.begin();
+
+		return event;
+	}
+
+	static ProofEvent proof() {
+		if (!ENABLED) {
+			return null;
+		}
+
+		final ProofEvent event = new ProofEvent();
+
+		event.begin();
+
+		return event;
+	}
+
+	static VerifyEvent verify() {
+		if (!ENABLED) {
+			return null;
+		}
+
+		final VerifyEvent event = new VerifyEvent();
+
+		event.begin();
+
+		return event;
+	}
+
+	private TreeEvents() {
+	}
+}
@@ -0,0 +1,48 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle;
+
+/**
+ * The hash function of a Merkle tree.
+ *
+ * <p>
+ * The hash of an internal node is the hash of the concatenation of its children; implementations may compute it
+ * without materializing the concatenation.
+ * </p>
+ *
+ * @author https://github.com/pa314159
+ */
+public interface TreeHash<T> {
+
+	/**
+	 * Calculates the hash of a value.
+	 *
+	 * @param value the value to be hashed.
+	 * @return the hash value of the input value.
+	 */
+	T hash(T value);
+
+	/**
+	 * Calculates the hash of the concatenation of two hash values.
+	 *
+	 * @param left  the hash of the left child.
+	 * @param right the hash of the right child.
+	 * @return the hash value of the parent node.
+	 */
+	T hash(T left, T right);
+}
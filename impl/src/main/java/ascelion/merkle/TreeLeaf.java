@@ -20,6 +20,7 @@ package ascelion.merkle;
 import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
 
 /**
@@ -41,7 +42,8 @@ public class TreeLeaf<T, S> extends TreeNode<T> {
 		return node != null ? node.parent : null;
 	}
 
-	private final List<T> chain = new ArrayList<>();
+	// allocated only when the chain is built, so the leaves of lazy trees don't pay for it
+	private List<T> chain;
 	private final S content;
 
 	/**
@@ -74,16 +76,21 @@ public class TreeLeaf<T, S> extends TreeNode<T> {
 	 * Gets the whole hash chain of this leaf, starting with the hash of this leaf, continuing with the list of the
 	 * siblings/uncles and ending with the hash of the root.
 	 *
+	 * <p>
+	 * The chain is empty if the tree has been built by a lazy builder, use {@link TreeRoot#proof(int)} instead.
+	 * </p>
+	 *
 	 * @return the whole validation chain.
 	 */
 	public final List<T> getChain() {
-		return unmodifiableList(this.chain);
+		return this.chain != null ? unmodifiableList(this.chain) : emptyList();
 	}
 
 	void buildChain() {
 		assert this.parent != null : "cannot build a chain for a root node";
-		assert this.chain.isEmpty() : "the chain has been already built";
+		assert this.chain == null : "the chain has been already built";
 
+		this.chain = new ArrayList<>();
 		this.chain.add(this.hash);
 
 		TreeNode<T> root = null;
@@ -98,4 +105,10 @@ public class TreeLeaf<T, S> extends TreeNode<T> {
 			this.chain.add(root.hash);
 		}
 	}
+
+	void buildChain(List<T> chain) {
+		assert this.chain == null : "the chain has been already built";
+
+		this.chain = chain;
+	}
 }
@@ -23,9 +23,9 @@ import static java.util.Objects.requireNonNull;
  * @author https://github.com/pa314159
  */
 class TreeNode<T> {
-	final T hash;
-	final TreeNode<T> left;
-	final TreeNode<T> right;
+	T hash;
+	TreeNode<T> left;
+	TreeNode<T> right;
 
 	TreeNode<T> parent;
 
@@ -56,7 +56,7 @@ class TreeNode<T> {
 		this.left.parent = this;
 		this.right.parent = this;
 
-		this.height = 1 + left.height;
+		this.height = 1 + Math.max(left.height, right.height);
 		this.count = left.count() + right.count();
 	}
 
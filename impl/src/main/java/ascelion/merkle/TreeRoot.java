@@ -17,9 +17,19 @@
 
 package ascelion.merkle;
 
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.stream.IntStream;
+
 /**
  * The root of the Merkle tree.
  *
+ * <p>
+ * The methods that address the inner nodes, such as {@link #width()}, {@link #hash(int, int)} and the proofs, have
+ * default implementations that throw {@link UnsupportedOperationException}, so the existing implementations of this
+ * interface remain valid; the trees built by {@link TreeBuilder} support all of them.
+ * </p>
+ *
  * @author https://github.com/pa314159
  */
 public interface TreeRoot<T> {
@@ -45,6 +55,36 @@ public interface TreeRoot<T> {
 	 */
 	int count();
 
+	/**
+	 * Gets the number of nodes on the lowest level, including the fillers.
+	 *
+	 * @return the width of the tree.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 */
+	default int width() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Gets the hash of a node.
+	 *
+	 * <p>
+	 * The nodes are addressed by level and index as in a tree built bottom-up: level 0 holds the leaves and the
+	 * fillers, the node <code>i</code> of a level has the children <code>2i</code> and <code>2i+1</code> on the level
+	 * below and the last node of a level with an odd size is promoted to the level above. The levels have
+	 * <code>width()</code>, <code>(width() + 1) / 2</code>, ... nodes, down to the root at level
+	 * <code>height() - 1</code>.
+	 * </p>
+	 *
+	 * @param level the level of the node, 0 for leaves.
+	 * @param index the index of the node on its level.
+	 * @return the hash value of the node.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 */
+	default T hash(int level, int index) {
+		throw new UnsupportedOperationException();
+	}
+
 	/**
 	 * Gets the leaf at the given index; return null if no such leaf exists.
 	 *
@@ -57,4 +97,76 @@ public interface TreeRoot<T> {
 	 * @return the leaf instance at the given position or null.
 	 */
 	<L extends TreeLeaf<T, ?>> L getLeaf(int index);
+
+	/**
+	 * Computes the validation chain of the leaf at the given index; returns null if no such leaf exists.
+	 *
+	 * <p>
+	 * The result has the format described at {@link TreeLeaf#getChain()}, but it is computed on each call, so it is
+	 * available for trees built by a lazy builder as well.
+	 * </p>
+	 *
+	 * @param index the leaf index.
+	 * @return the validation chain of the leaf at the given position or null.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 * @see TreeBuilder#lazy(boolean)
+	 */
+	default List<T> proof(int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the hashes needed to validate several leaves at once.
+	 *
+	 * <p>
+	 * The result contains only the hashes that cannot be computed from the given leaves, level by level from the leaves
+	 * up and from left to right within a level; neither the hashes of the leaves nor the hash of the root are included.
+	 * The proof is checked with {@link TreeBuilder#isValid(java.util.Map, List, int, Object, java.util.function.BiPredicate)}.
+	 * </p>
+	 *
+	 * @param indices the indices of the leaves.
+	 * @return the multi-proof of the leaves.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 */
+	default List<T> multiProof(int... indices) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the hashes needed to validate the contiguous leaves in the range [from, to) at once.
+	 *
+	 * <p>
+	 * The result is the multi-proof of the leaves in the range, see {@link #multiProof(int...)}, but it contains only the
+	 * siblings of the left and the right boundary paths, so it has at most <code>2 * (height() - 1)</code> hashes
+	 * whatever the length of the range. The proof is checked with
+	 * {@link TreeBuilder#isValid(int, List, List, int, Object, BiPredicate)}.
+	 * </p>
+	 *
+	 * @param from the index of the first leaf, inclusive.
+	 * @param to   the index of the last leaf, exclusive.
+	 * @return the range proof of the leaves.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 */
+	default List<T> rangeProof(int from, int to) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Finds the indices of the leaves that differ from those of another tree, in ascending order.
+	 *
+	 * <p>
+	 * Both trees must have been built with the same builder configuration and the same width, see {@link #width()}.
+	 * The trees are compared from the root down and only the subtrees with different hashes are visited, so k
+	 * differences cost O(k log n) hash lookups. The stream is lazy, the nodes are compared as the indices are
+	 * consumed. Leaves that exist only in one of the trees are reported as different.
+	 * </p>
+	 *
+	 * @param other the other tree.
+	 * @param eq    equality operator for &lt;T&gt;
+	 * @return the stream of different leaf indices.
+	 * @throws UnsupportedOperationException if the tree does not support the operation.
+	 */
+	default IntStream diff(TreeRoot<T> other, BiPredicate<T, T> eq) {
+		throw new UnsupportedOperationException();
+	}
 }
@@ -0,0 +1,66 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package ascelion.merkle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the validation methods of {@link TreeBuilder}.
+ *
+ * @author https://github.com/pa314159
+ */
+@Name("ascelion.merkle.Verify")
+@Label("Tree Verify")
+@Category("Merkle Tree")
+@Description("Checks the proof of some leaves")
+final class VerifyEvent extends Event {
+
+	@Label("Kind")
+	@Description("The kind of proof: chain, multi, range or batch")
+	String kind;
+
+	@Label("Leaves")
+	@Description("The number of checked leaves")
+	int leaves;
+
+	@Label("Count")
+	@Description("The number of leaves of the tree, 0 if not known")
+	int count;
+
+	@Label("Valid")
+	@Description("Whether all leaves are valid")
+	boolean valid;
+
+	boolean end(String kind, int leaves, int count, boolean valid) {
+		if (shouldCommit()) {
+			this.kind = kind;
+			this.leaves = leaves;
+			this.count = count;
+			this.valid = valid;
+
+			commit();
+		}
+
+		return valid;
+	}
+}
@@ -1,10 +1,26 @@
 package ascelion.merkle.help;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import ascelion.merkle.TreeBuilder;
 import ascelion.merkle.TreeLeaf;
@@ -15,6 +31,9 @@ import ascelion.merkle.TreeRoot;
  */
 public final class DataSlice extends TreeLeaf<byte[], byte[]> {
 
+	// the number of bytes read by a task of a parallel build
+	static private final int BATCH_SIZE = 1 << 20;
+
 	/**
 	 * Concatenation operator for byte[].
 	 *
@@ -49,6 +68,73 @@ public final class DataSlice extends TreeLeaf<byte[], byte[]> {
 		return bld.build();
 	}
 
+	/**
+	 * Helper method to construct a Merkle tree from an input stream, overlapping the reading with the hashing.
+	 *
+	 * <p>
+	 * The calling thread reads the slices into a fixed pool of <code>2 * hashers</code> buffers and passes them through a
+	 * queue to at most <code>hashers</code> tasks running on the executor, which are started as the slices are queued and
+	 * end when the queue is empty; the reader waits for a free buffer when all of them are in use, so the memory used
+	 * besides the leaves is bounded by the pool. Each leaf keeps a copy of its slice. The reader hashes a queued slice
+	 * itself only when no buffer is free and none of the tasks is running, so any executor can be used, even one running
+	 * the tasks in the calling thread or one without free threads. The hash operator of the builder must be thread safe.
+	 * The resulted tree is identical to the one built sequentially.
+	 * </p>
+	 *
+	 * @param bld     the builder used to create the tree.
+	 * @param size    the size of a slice.
+	 * @param ist     the input stream.
+	 * @param exec    the executor running the hashers.
+	 * @param hashers the number of hashers.
+	 * @return the tree
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public TreeRoot<byte[]> buildTree(TreeBuilder<byte[]> bld, int size, InputStream ist, Executor exec, int hashers)
+	        throws IOException {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a slice must be greater than 0");
+		}
+		if (hashers <= 0) {
+			throw new IllegalArgumentException("The number of hashers must be greater than 0");
+		}
+
+		final Pipeline pipe = new Pipeline(bld, exec, hashers, size);
+		final List<Slot> slots = new ArrayList<>();
+
+		while (pipe.failure.get() == null) {
+			final byte[] buf = pipe.take();
+			final int length = read(ist, buf);
+
+			if (length == 0) {
+				pipe.release(buf);
+
+				break;
+			}
+
+			final Slot slot = new Slot(buf, length);
+
+			slots.add(slot);
+			pipe.submit(slot);
+		}
+
+		pipe.await();
+
+		final Throwable failure = pipe.failure.get();
+
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+
+		for (final Slot slot : slots) {
+			bld.collect(slot.leaf);
+		}
+
+		return bld.build();
+	}
+
 	/**
 	 * Helper method to construct a Merkle tree from a byte channel.
 	 *
@@ -76,23 +162,291 @@ public final class DataSlice extends TreeLeaf<byte[], byte[]> {
 		return bld.build();
 	}
 
+	/**
+	 * Helper method to construct a Merkle tree from a file channel, reading and hashing the slices in parallel.
+	 *
+	 * <p>
+	 * The slices are read with positional reads, so the channel can be shared by the tasks of the pool; the hash
+	 * operator of the builder must be thread safe. The resulted tree is identical to the one built sequentially.
+	 * </p>
+	 *
+	 * @param bld  the builder used to create the tree.
+	 * @param size the size of a slice.
+	 * @param chn  the file channel.
+	 * @param pool the pool used to read and hash the slices.
+	 * @return the tree
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public TreeRoot<byte[]> buildTree(TreeBuilder<byte[]> bld, int size, FileChannel chn, ForkJoinPool pool)
+	        throws IOException {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a slice must be greater than 0");
+		}
+
+		final long length = chn.size();
+		final long count = (length + size - 1) / size;
+
+		if (count > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many slices");
+		}
+
+		final DataSlice[] leaves = new DataSlice[(int) count];
+
+		try {
+			pool.invoke(new Slices(bld, chn, size, length, leaves, 0, leaves.length));
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return bld.build(leaves);
+	}
+
 	// ensures all bytes are read...
 	private static byte[] readNBytes(InputStream ist, int size) throws IOException {
 		final byte[] data = new byte[size];
-		int read = 0;
+		final int read = read(ist, data);
 
-		while (size > 0 && (read = ist.read(data, data.length - size, size)) > 0) {
-			size -= read;
-		}
-		if (size > 0) {
-			return Arrays.copyOf(data, data.length - size);
-		} else {
-			return data;
+		return read < size ? Arrays.copyOf(data, read) : data;
+	}
+
+	// fills the buffer unless the stream ends, returns the number of bytes read
+	private static int read(InputStream ist, byte[] buf) throws IOException {
+		int size = 0;
+		int read;
+
+		while (size < buf.length && (read = ist.read(buf, size, buf.length - size)) > 0) {
+			size += read;
 		}
+
+		return size;
 	}
 
 	private DataSlice(byte[] hash, byte[] content) {
 		super(hash, content);
 	}
 
+	// a slice passed from the reader to the hashers; the buffer goes back to the pool once the leaf is created
+	static private final class Slot {
+		final int length;
+		byte[] buf;
+		DataSlice leaf;
+
+		Slot(byte[] buf, int length) {
+			this.buf = buf;
+			this.length = length;
+		}
+	}
+
+	// the buffers and the hashers of a pipelined build; after a failure the slots are just drained
+	static private final class Pipeline {
+		private final TreeBuilder<byte[]> bld;
+		private final Executor exec;
+		private final int hashers;
+		private final int size;
+		private final BlockingQueue<Slot> queue;
+		// the scheduled or running hashers
+		private final AtomicInteger active = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		// guarded by this
+		private final Deque<byte[]> free = new ArrayDeque<>();
+		private int allocated;
+		// the hashers that have started
+		private int running;
+		// the slots submitted and not hashed yet
+		private int pending;
+
+		Pipeline(TreeBuilder<byte[]> bld, Executor exec, int hashers, int size) {
+			this.bld = bld;
+			this.exec = exec;
+			this.hashers = hashers;
+			this.size = size;
+			// all the buffers fit in the queue, so adding a slot never blocks
+			this.queue = new ArrayBlockingQueue<>(2 * hashers);
+		}
+
+		// gets a free buffer, waiting for the running hashers to release one
+		byte[] take() throws InterruptedIOException {
+			while (true) {
+				synchronized (this) {
+					if (!this.free.isEmpty()) {
+						return this.free.pop();
+					}
+					if (this.allocated < 2 * this.hashers) {
+						this.allocated++;
+
+						return new byte[this.size];
+					}
+					if (this.running > 0) {
+						waitFor();
+
+						continue;
+					}
+				}
+
+				// all the buffers are queued and no hasher has started, the executor may have no free thread
+				final Slot slot = this.queue.poll();
+
+				if (slot != null) {
+					hash(slot);
+				}
+			}
+		}
+
+		synchronized void release(byte[] buf) {
+			this.free.push(buf);
+
+			notifyAll();
+		}
+
+		void submit(Slot slot) {
+			synchronized (this) {
+				this.pending++;
+			}
+
+			this.queue.add(slot);
+
+			if (acquire()) {
+				try {
+					this.exec.execute(this::drain);
+				} catch (final RejectedExecutionException e) {
+					this.active.decrementAndGet();
+				}
+			}
+		}
+
+		// hashes what is left in the queue, then waits for the slots taken by the running hashers
+		void await() throws InterruptedIOException {
+			for (Slot slot; (slot = this.queue.poll()) != null;) {
+				hash(slot);
+			}
+
+			synchronized (this) {
+				while (this.pending > 0) {
+					waitFor();
+				}
+			}
+		}
+
+		private void waitFor() throws InterruptedIOException {
+			try {
+				wait();
+			} catch (final InterruptedException e) {
+				this.failure.compareAndSet(null, e);
+
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException("Interrupted while hashing the slices");
+			}
+		}
+
+		private boolean acquire() {
+			for (int count; (count = this.active.get()) < this.hashers;) {
+				if (this.active.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		// a slot queued while this hasher was leaving is taken again, unless another hasher has started
+		private void drain() {
+			synchronized (this) {
+				this.running++;
+			}
+
+			try {
+				do {
+					for (Slot slot; (slot = this.queue.poll()) != null;) {
+						hash(slot);
+					}
+
+					this.active.decrementAndGet();
+				} while (!this.queue.isEmpty() && acquire());
+			} finally {
+				synchronized (this) {
+					this.running--;
+
+					notifyAll();
+				}
+			}
+		}
+
+		private void hash(Slot slot) {
+			try {
+				if (this.failure.get() == null) {
+					final byte[] data = Arrays.copyOf(slot.buf, slot.length);
+
+					slot.leaf = new DataSlice(this.bld.hash(data), data);
+				}
+			} catch (final RuntimeException | Error e) {
+				this.failure.compareAndSet(null, e);
+			} finally {
+				final byte[] buf = slot.buf;
+
+				slot.buf = null;
+
+				synchronized (this) {
+					this.free.push(buf);
+					this.pending--;
+
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	// reads and hashes the slices in the range [from, to)
+	@SuppressWarnings("serial")
+	static private final class Slices extends RecursiveAction {
+		private final TreeBuilder<byte[]> bld;
+		private final FileChannel chn;
+		private final int size;
+		private final long length;
+		private final DataSlice[] leaves;
+		private final int from;
+		private final int to;
+
+		Slices(TreeBuilder<byte[]> bld, FileChannel chn, int size, long length, DataSlice[] leaves, int from, int to) {
+			this.bld = bld;
+			this.chn = chn;
+			this.size = size;
+			this.length = length;
+			this.leaves = leaves;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long) (this.to - this.from) * this.size > BATCH_SIZE && this.to - this.from > 1) {
+				final int half = (this.from + this.to) >>> 1;
+
+				invokeAll(new Slices(this.bld, this.chn, this.size, this.length, this.leaves, this.from, half),
+				        new Slices(this.bld, this.chn, this.size, this.length, this.leaves, half, this.to));
+
+				return;
+			}
+
+			try {
+				for (int k = this.from; k < this.to; k++) {
+					final long offset = (long) k * this.size;
+					final byte[] data = new byte[(int) Math.min(this.size, this.length - offset)];
+					final ByteBuffer buf = ByteBuffer.wrap(data);
+
+					while (buf.hasRemaining()) {
+						if (this.chn.read(buf, offset + buf.position()) < 0) {
+							throw new EOFException("Unexpected end of file at " + (offset + buf.position()));
+						}
+					}
+
+					this.leaves[k] = new DataSlice(this.bld.hash(data), data);
+				}
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,77 @@
+package ascelion.merkle.help;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+
+import ascelion.merkle.TreeHash;
+
+/**
+ * Hash function for byte[] based on a {@link MessageDigest}.
+ *
+ * <p>
+ * Each thread reuses its own digest instance and the children of a node are fed one after the other into the digest,
+ * so hashing allocates only the resulting array. Instances of this class are thread safe.
+ * </p>
+ */
+public final class DigestHash implements TreeHash<byte[]> {
+
+	static private MessageDigest newDigest(MessageDigest proto) {
+		try {
+			return (MessageDigest) proto.clone();
+		} catch (final CloneNotSupportedException e) {
+			return newDigest(proto.getAlgorithm(), proto.getProvider());
+		}
+	}
+
+	static private MessageDigest newDigest(String algo, Provider prov) {
+		try {
+			return MessageDigest.getInstance(algo, prov);
+		} catch (final NoSuchAlgorithmException e) {
+			// the algorithm has been already checked
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final ThreadLocal<MessageDigest> digest;
+
+	/**
+	 * Constructs a hash function using the given algorithm.
+	 *
+	 * @param algo the name of the digest algorithm.
+	 * @throws NoSuchAlgorithmException whether the algorithm is not available.
+	 */
+	public DigestHash(String algo) throws NoSuchAlgorithmException {
+		final MessageDigest proto = MessageDigest.getInstance(algo);
+
+		this.digest = ThreadLocal.withInitial(() -> newDigest(proto));
+	}
+
+	/**
+	 * Gets the name of the digest algorithm.
+	 *
+	 * @return the algorithm name.
+	 */
+	public String getAlgorithm() {
+		return this.digest.get().getAlgorithm();
+	}
+
+	@Override
+	public byte[] hash(byte[] value) {
+		final MessageDigest dig = this.digest.get();
+
+		dig.update(value);
+
+		return dig.digest();
+	}
+
+	@Override
+	public byte[] hash(byte[] left, byte[] right) {
+		final MessageDigest dig = this.digest.get();
+
+		dig.update(left);
+		dig.update(right);
+
+		return dig.digest();
+	}
+}
@@ -0,0 +1,182 @@
+package ascelion.merkle.help;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+import java.util.function.ObjLongConsumer;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+
+/**
+ * Helper class to build a Merkle tree from a file without copying its content. The resulted tree contains instances of
+ * this class as leaves.
+ *
+ * <p>
+ * The content of a leaf is a read-only view of its region in a memory mapping of the file, so the heap used by the
+ * tree doesn't depend on the size of the file. The mapping remains valid after the channel is closed.
+ * </p>
+ */
+public final class MappedSlice extends TreeLeaf<byte[], ByteBuffer> {
+
+	/**
+	 * Helper method to construct a Merkle tree from a file channel.
+	 *
+	 * @param bld  the builder used to create the tree.
+	 * @param size the size of a slice.
+	 * @param chn  the file channel.
+	 * @return the tree
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public TreeRoot<byte[]> buildTree(TreeBuilder<byte[]> bld, int size, FileChannel chn) throws IOException {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a slice must be greater than 0");
+		}
+
+		final byte[] data = new byte[size];
+
+		slices(chn, size, (content, offset) -> {
+			final byte[] hashed = content.capacity() == size ? data : new byte[content.capacity()];
+
+			content.duplicate().get(hashed);
+
+			bld.collect(new MappedSlice(bld.hash(hashed), content, offset));
+		});
+
+		return bld.build();
+	}
+
+	/**
+	 * Helper method to reconstruct the Merkle tree of a file that has changed, hashing only the ancestors of the changed
+	 * slices.
+	 *
+	 * <p>
+	 * The previous tree must have been built by this class from the same file with the same slice size. Every slice is
+	 * hashed again, the hash function of the tree being the check that a slice hasn't changed; the tree is created with
+	 * {@link TreeBuilder#rebuild(TreeRoot, TreeLeaf[], BiPredicate)}, so only the ancestors of the slices with other
+	 * hashes are hashed and the previous tree is not modified.
+	 * </p>
+	 *
+	 * @param bld  the builder used to create the tree.
+	 * @param size the size of a slice.
+	 * @param chn  the file channel.
+	 * @param prev the previous tree of the file.
+	 * @return the tree
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public TreeRoot<byte[]> updateTree(TreeBuilder<byte[]> bld, int size, FileChannel chn, TreeRoot<byte[]> prev)
+	        throws IOException {
+		return updateTree(bld, size, chn, prev, (index, content) -> true);
+	}
+
+	/**
+	 * Helper method to reconstruct the Merkle tree of a file that has changed, hashing only the changed slices.
+	 *
+	 * <p>
+	 * The previous tree must have been built by this class from the same file with the same slice size. The predicate
+	 * is called for each slice of the file, in order, with its index and a view of its content; a slice is hashed if
+	 * the predicate tells it has changed, if it has another length or if it didn't exist in the previous tree, otherwise
+	 * it keeps its previous hash. The tree is created with {@link TreeBuilder#rebuild(TreeRoot, TreeLeaf[], BiPredicate)},
+	 * so only the ancestors of the changed slices are hashed and the previous tree is not modified.
+	 * </p>
+	 * <p>
+	 * The predicate must not miss a change, since the tree would keep the hash of the previous content: it fits a
+	 * caller that knows the written ranges. A checksum of the content is not enough, two contents may have the same
+	 * one; use {@link #updateTree(TreeBuilder, int, FileChannel, TreeRoot)} instead.
+	 * </p>
+	 *
+	 * @param bld     the builder used to create the tree.
+	 * @param size    the size of a slice.
+	 * @param chn     the file channel.
+	 * @param prev    the previous tree of the file.
+	 * @param changed tells whether the slice at the given index has changed.
+	 * @return the tree
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public TreeRoot<byte[]> updateTree(TreeBuilder<byte[]> bld, int size, FileChannel chn, TreeRoot<byte[]> prev,
+	        BiPredicate<Integer, ByteBuffer> changed) throws IOException {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a slice must be greater than 0");
+		}
+
+		final long length = chn.size();
+
+		final long count = (length + size - 1) / size;
+
+		if (count > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many slices");
+		}
+
+		final MappedSlice[] leaves = new MappedSlice[(int) count];
+		final byte[] data = new byte[size];
+
+		slices(chn, size, (content, offset) -> {
+			final int index = (int) (offset / size);
+			final MappedSlice last = index < prev.count() ? prev.getLeaf(index) : null;
+
+			if (changed.test(index, content.duplicate()) || last == null || last.getLength() != content.capacity()) {
+				final byte[] hashed = content.capacity() == size ? data : new byte[content.capacity()];
+
+				content.duplicate().get(hashed);
+
+				leaves[index] = new MappedSlice(bld.hash(hashed), content, offset);
+			} else {
+				leaves[index] = new MappedSlice(last.hash(), content, offset);
+			}
+		});
+
+		return bld.rebuild(prev, leaves, Arrays::equals);
+	}
+
+	// maps the file and passes the view of each slice with its offset to the action
+	static void slices(FileChannel chn, int size, ObjLongConsumer<ByteBuffer> action) throws IOException {
+		// a mapping cannot exceed 2GB, so map the largest number of whole slices
+		final long chunk = (long) (Integer.MAX_VALUE / size) * size;
+		final long length = chn.size();
+
+		for (long offset = 0; offset < length; offset += chunk) {
+			final MappedByteBuffer map = chn.map(MapMode.READ_ONLY, offset, Math.min(chunk, length - offset));
+
+			for (int from = 0; from < map.limit(); from += size) {
+				map.limit(Math.min(from + size, map.capacity())).position(from);
+
+				final ByteBuffer content = map.slice();
+
+				map.limit(map.capacity());
+
+				action.accept(content, offset + from);
+			}
+		}
+	}
+
+	private final long offset;
+
+	MappedSlice(byte[] hash, ByteBuffer content, long offset) {
+		super(hash, content);
+
+		this.offset = offset;
+	}
+
+	/**
+	 * Gets the position of this slice in the file.
+	 *
+	 * @return the offset of the first byte of this slice.
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * Gets the number of bytes of this slice.
+	 *
+	 * @return the length of this slice.
+	 */
+	public int getLength() {
+		return getContent().capacity();
+	}
+}
@@ -0,0 +1,154 @@
+package ascelion.merkle.help;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeRoot;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The validation chain of a leaf of a tree with byte array hashes, with a compact binary encoding.
+ *
+ * <p>
+ * The encoding holds the leaf index and the number of leaves as 32 bit integers, the tree height, the length of a
+ * hash and the number of hashes as unsigned bytes, followed by the raw hashes in the order described at
+ * {@link ascelion.merkle.TreeLeaf#getChain()}. A SHA-256 proof for a leaf of a tree with a million leaves takes 715
+ * bytes.
+ * </p>
+ */
+public final class Proof {
+
+	/**
+	 * Computes the proof of a leaf.
+	 *
+	 * @param root  the tree.
+	 * @param index the leaf index.
+	 * @return the proof or null if no such leaf exists.
+	 */
+	static public Proof of(TreeRoot<byte[]> root, int index) {
+		final List<byte[]> chain = root.proof(index);
+
+		return chain != null ? new Proof(index, root.count(), root.height(), chain) : null;
+	}
+
+	/**
+	 * Reads a proof written by {@link #writeTo(DataOutput)}.
+	 *
+	 * @param in the input.
+	 * @return the proof.
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public Proof readFrom(DataInput in) throws IOException {
+		final int index = in.readInt();
+		final int count = in.readInt();
+		final int height = in.readUnsignedByte();
+		final int length = in.readUnsignedByte();
+		final int size = in.readUnsignedByte();
+		final List<byte[]> chain = new ArrayList<>(size);
+
+		for (int k = 0; k < size; k++) {
+			final byte[] hash = new byte[length];
+
+			in.readFully(hash);
+
+			chain.add(hash);
+		}
+
+		return new Proof(index, count, height, chain);
+	}
+
+	private final int index;
+	private final int count;
+	private final int height;
+	private final List<byte[]> chain;
+
+	private Proof(int index, int count, int height, List<byte[]> chain) {
+		this.index = index;
+		this.count = count;
+		this.height = height;
+		this.chain = unmodifiableList(chain);
+	}
+
+	/**
+	 * Gets the index of the leaf.
+	 *
+	 * @return the leaf index.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Gets the number of leaves of the tree.
+	 *
+	 * @return the leaves count.
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Gets the height of the tree.
+	 *
+	 * @return the height of the tree.
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Gets the validation chain, starting with the hash of the leaf and ending with the hash of the root.
+	 *
+	 * @return the validation chain.
+	 */
+	public List<byte[]> getChain() {
+		return this.chain;
+	}
+
+	/**
+	 * Checks whether this proof is valid using the operators and the shape of the given builder.
+	 *
+	 * @param bld the builder that has created the tree.
+	 * @return true if the proof is valid.
+	 */
+	public boolean isValid(TreeBuilder<byte[]> bld) {
+		requireNonNull(bld, "The builder cannot be null");
+
+		return bld.isValid(this.chain, this.index, this.count, Arrays::equals);
+	}
+
+	/**
+	 * Writes the binary encoding of this proof.
+	 *
+	 * @param out the output.
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		final int length = this.chain.get(0).length;
+
+		if (length > 255) {
+			throw new IllegalArgumentException("The hashes cannot be longer than 255 bytes");
+		}
+
+		out.writeInt(this.index);
+		out.writeInt(this.count);
+		out.writeByte(this.height);
+		out.writeByte(length);
+		out.writeByte(this.chain.size());
+
+		for (final byte[] hash : this.chain) {
+			if (hash.length != length) {
+				throw new IllegalArgumentException("The hashes must have the same length");
+			}
+
+			out.write(hash);
+		}
+	}
+}
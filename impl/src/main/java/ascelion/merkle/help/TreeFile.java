@@ -0,0 +1,207 @@
+package ascelion.merkle.help;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeRoot;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Helper class to save the hashes of a tree built from a file and to restore the tree without reading the file again.
+ *
+ * <p>
+ * A tree file contains a header followed by the hashes of each level, from the leaves up to the root; the header holds
+ * the name of the hash algorithm, the size and the modification time of the data file, the size of a slice, the
+ * length of a hash, the number of leaves and the width of the tree. The fillers of the lowest level are not saved.
+ * </p>
+ */
+public final class TreeFile {
+
+	static private final int MAGIC = 0x4d4b5446;
+	static private final int VERSION = 1;
+
+	/**
+	 * Saves the hashes of a tree built from a file.
+	 *
+	 * <p>
+	 * The attributes must be read before building the tree, so a tree built from a file modified in the meantime is
+	 * considered stale when restored. The tree file is written to a temporary file that replaces the target at the end.
+	 * </p>
+	 *
+	 * @param root  the tree.
+	 * @param algo  the name of the hash algorithm.
+	 * @param size  the size of a slice.
+	 * @param attrs the attributes of the data file.
+	 * @param file  the tree file.
+	 * @throws IOException whether an I/O error occurs.
+	 */
+	static public void write(TreeRoot<byte[]> root, String algo, int size, BasicFileAttributes attrs, Path file)
+	        throws IOException {
+		final int length = root.hash().length;
+		final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				final byte[] name = algo.getBytes(UTF_8);
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeLong(attrs.size());
+				out.writeLong(attrs.lastModifiedTime().toMillis());
+				out.writeInt(size);
+				out.writeInt(length);
+				out.writeInt(root.count());
+				out.writeInt(root.width());
+
+				int width = root.count();
+
+				for (int h = 0; h < root.height(); h++) {
+					for (int i = 0; i < width; i++) {
+						final byte[] hash = root.hash(h, i);
+
+						if (hash.length != length) {
+							throw new IllegalArgumentException("The hashes must have the same length");
+						}
+
+						out.write(hash);
+					}
+
+					width = h == 0 ? (root.width() + 1) >>> 1 : (width + 1) >>> 1;
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Restores a tree saved by {@link #write(TreeRoot, String, int, BasicFileAttributes, Path)}; returns null if there
+	 * is no tree file or if it is stale.
+	 *
+	 * <p>
+	 * The tree is stale if it has been saved for another hash algorithm or slice size, or if the size or the
+	 * modification time of the data file have changed. Otherwise the tree file is mapped and the tree is recreated
+	 * without hashing; its leaves are instances of {@link MappedSlice}, so the data file isn't read either.
+	 * </p>
+	 *
+	 * @param bld  the builder used to create the tree.
+	 * @param algo the name of the hash algorithm.
+	 * @param size the size of a slice.
+	 * @param data the data file.
+	 * @param file the tree file.
+	 * @return the tree or null.
+	 * @throws IOException whether an I/O error occurs or the tree file is corrupted.
+	 */
+	static public TreeRoot<byte[]> read(TreeBuilder<byte[]> bld, String algo, int size, Path data, Path file)
+	        throws IOException {
+		final MappedByteBuffer map;
+
+		try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ)) {
+			map = chn.map(MapMode.READ_ONLY, 0, chn.size());
+		} catch (final NoSuchFileException e) {
+			return null;
+		}
+
+		try {
+			if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+				return null;
+			}
+
+			final byte[] name = new byte[map.getShort()];
+
+			map.get(name);
+
+			final BasicFileAttributes attrs = Files.readAttributes(data, BasicFileAttributes.class);
+
+			if (!algo.equals(new String(name, UTF_8))
+			        || map.getLong() != attrs.size()
+			        || map.getLong() != attrs.lastModifiedTime().toMillis()
+			        || map.getInt() != size) {
+				return null;
+			}
+
+			final int length = map.getInt();
+			final int count = map.getInt();
+			final int width = map.getInt();
+
+			if (count != (attrs.size() + size - 1) / size) {
+				throw new IOException("Corrupted tree file " + file);
+			}
+			// the number of hashes is known before allocating them
+			if (length != bld.hash(new byte[0]).length || width < count || width > 2L * count) {
+				throw new IOException("Corrupted tree file " + file);
+			}
+
+			long total = count;
+
+			for (int w = width; w > 1;) {
+				w = (w + 1) >>> 1;
+				total += w;
+			}
+
+			if (total * length != map.remaining()) {
+				throw new IOException("Corrupted tree file " + file);
+			}
+
+			final byte[][] hashes = hashes(map, count, length);
+			final List<byte[][]> levels = new ArrayList<>();
+
+			for (int w = width; w > 1;) {
+				w = (w + 1) >>> 1;
+
+				levels.add(hashes(map, w, length));
+			}
+
+			final MappedSlice[] leaves = new MappedSlice[count];
+
+			try (FileChannel chn = FileChannel.open(data, StandardOpenOption.READ)) {
+				if (chn.size() != attrs.size()) {
+					return null;
+				}
+
+				MappedSlice.slices(chn, size, (content, offset) -> {
+					final int index = (int) (offset / size);
+
+					leaves[index] = new MappedSlice(hashes[index], content, offset);
+				});
+			}
+
+			return bld.restore(leaves, levels);
+		} catch (final BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+			throw new IOException("Corrupted tree file " + file, e);
+		}
+	}
+
+	static private byte[][] hashes(ByteBuffer map, int count, int length) {
+		final byte[][] hashes = new byte[count][length];
+
+		for (final byte[] hash : hashes) {
+			map.get(hash);
+		}
+
+		return hashes;
+	}
+
+	private TreeFile() {
+	}
+}
@@ -0,0 +1,35 @@
+package ascelion.merkle;
+
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TreeAccumulatorTest {
+
+	final TreeBuilder<String> tbld = builder("-");
+
+	@Test(expected = IllegalStateException.class)
+	public void withEmpty() {
+		this.tbld.accumulator().hash();
+	}
+
+	@Test
+	public void sameAsBuild() {
+		final TreeAccumulator<String> acc = this.tbld.accumulator();
+
+		for (int count = 1; count <= 70; count++) {
+			final TreeLeaf<String, ?>[] leaves = leaves(count);
+			final TreeRoot<String> root = this.tbld.lazy(true).build(leaves);
+
+			acc.add(leaves[count - 1].hash());
+
+			assertThat(acc.count(), equalTo(count));
+			assertThat(acc.height(), equalTo(root.height()));
+			assertThat(acc.hash(), equalTo(root.hash()));
+		}
+	}
+}
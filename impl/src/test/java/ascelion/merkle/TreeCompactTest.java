@@ -0,0 +1,156 @@
+package ascelion.merkle;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import ascelion.merkle.help.DigestHash;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TreeCompactTest {
+
+	final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	public void sameAsLinked() {
+		verify(builder("").compact(true));
+	}
+
+	@Test
+	public void sameAsLinkedParallel() {
+		verify(builder("").compact(true).parallel(this.pool));
+	}
+
+	@Test
+	public void restore() {
+		for (final boolean unbalanced : new boolean[] { false, true }) {
+			final TreeBuilder<String> tbld = builder("")
+			        .unbalanced(unbalanced);
+
+			for (final int count : new int[] { 1, 2, 3, 13, 1025 }) {
+				final TreeRoot<String> linked = tbld.build(leaves(count));
+				final List<String[]> levels = new ArrayList<>();
+
+				for (int h = 1, width = linked.width(); h < linked.height(); h++) {
+					width = (width + 1) >>> 1;
+
+					final String[] level = new String[width];
+
+					for (int i = 0; i < width; i++) {
+						level[i] = linked.hash(h, i);
+					}
+
+					levels.add(level);
+				}
+
+				final TreeLeaf<String, ?>[] leaves = leaves(count);
+				final TreeRoot<String> restored = tbld.restore(leaves, levels);
+
+				assertThat(restored.hash(), equalTo(linked.hash()));
+				assertThat(restored.height(), equalTo(linked.height()));
+
+				for (int i = 0; i < count; i++) {
+					assertThat(restored.getLeaf(i), sameInstance(leaves[i]));
+					assertThat(leaves[i].getChain(), equalTo(linked.proof(i)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void packedHashes() throws NoSuchAlgorithmException {
+		final DigestHash hashFn = new DigestHash("SHA-256");
+
+		for (final boolean unbalanced : new boolean[] { false, true }) {
+			for (final int count : new int[] { 1, 2, 3, 13, 1025 }) {
+				final TreeBuilder<byte[]> linked = new TreeBuilder<>(hashFn, new byte[0]).unbalanced(unbalanced);
+				final TreeBuilder<byte[]> compact = new TreeBuilder<>(hashFn, new byte[0]).unbalanced(unbalanced)
+				        .compact(true)
+				        .lazy(true);
+				final TreeLeaf<byte[], ?>[] leaves = digests(hashFn, count);
+				final TreeRoot<byte[]> expected = linked.build(digests(hashFn, count));
+				final TreeRoot<byte[]> root = compact.build(leaves);
+
+				assertArrayEquals(expected.hash(), root.hash());
+
+				for (int h = 0, width = root.width(); h < root.height(); h++, width = (width + 1) >>> 1) {
+					for (int i = 0; i < width; i++) {
+						assertArrayEquals(expected.hash(h, i), root.hash(h, i));
+					}
+				}
+				for (int i = 0; i < count; i++) {
+					assertThat(compact.isValid(root.proof(i), i, count, Arrays::equals), is(true));
+				}
+
+				// a packed level is updated in place
+				final TreeLeaf<byte[], ?> leaf = new TreeLeaf<>(hashFn.hash(new byte[] { 1 }), null);
+				final TreeLeaf<byte[], ?>[] changed = digests(hashFn, count);
+
+				changed[count / 2] = new TreeLeaf<>(leaf.hash(), null);
+
+				compact.update(root, count / 2, leaf);
+
+				assertArrayEquals(linked.build(changed).hash(), root.hash());
+
+				// rebuilding with the previous leaves reads the packed levels back
+				assertArrayEquals(expected.hash(), compact.rebuild(root, digests(hashFn, count), Arrays::equals).hash());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void restoreMismatch() {
+		builder("")
+		        .restore(leaves(5), Arrays.asList(new String[4], new String[1]));
+	}
+
+	private TreeLeaf<byte[], ?>[] digests(DigestHash hashFn, int count) {
+		return IntStream.range(0, count)
+		        .mapToObj(n -> new TreeLeaf<>(hashFn.hash(Integer.toString(n).getBytes()), null))
+		        .toArray(TreeLeaf[]::new);
+	}
+
+	private void verify(TreeBuilder<String> tbld) {
+		for (final int count : new int[] { 1, 2, 3, 13, 1024, 1025, 5000 }) {
+			final TreeLeaf<String, ?>[] linkedLeaves = leaves(count);
+			final TreeLeaf<String, ?>[] compactLeaves = leaves(count);
+
+			final TreeRoot<String> linked = builder("")
+			        .build(linkedLeaves);
+			final TreeRoot<String> compact = tbld.build(compactLeaves);
+
+			assertThat(compact, instanceOf(ArrayRoot.class));
+			assertThat(compact.hash(), equalTo(linked.hash()));
+			assertThat(compact.height(), equalTo(linked.height()));
+			assertThat(compact.count(), equalTo(linked.count()));
+			assertThat(compact.getLeaf(count), is(nullValue()));
+
+			for (int i = 0; i < count; i++) {
+				assertThat(compact.getLeaf(i), sameInstance(compactLeaves[i]));
+				assertThat(compactLeaves[i].getChain(), equalTo(linkedLeaves[i].getChain()));
+				assertThat(tbld.isValid(compactLeaves[i].getChain(), i, Objects::equals), is(true));
+			}
+		}
+	}
+}
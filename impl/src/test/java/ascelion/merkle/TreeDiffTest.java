@@ -0,0 +1,81 @@
+package ascelion.merkle;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TreeDiffTest {
+
+	@Test
+	public void padded() {
+		verify(builder(""));
+	}
+
+	@Test
+	public void compact() {
+		verify(builder("").compact(true));
+	}
+
+	@Test
+	public void unbalanced() {
+		verify(builder("").unbalanced(true));
+	}
+
+	@Test
+	public void differentCount() {
+		final TreeBuilder<String> tbld = builder("");
+		final TreeRoot<String> root = tbld.build(leaves(10));
+		final TreeRoot<String> other = tbld.build(leaves(13));
+
+		assertArrayEquals(new int[] { 10, 11, 12 }, root.diff(other, Objects::equals).toArray());
+		assertArrayEquals(new int[] { 10, 11, 12 }, other.diff(root, Objects::equals).toArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void differentWidth() {
+		final TreeBuilder<String> tbld = builder("");
+
+		tbld.build(leaves(10)).diff(tbld.build(leaves(20)), Objects::equals);
+	}
+
+	private void verify(TreeBuilder<String> tbld) {
+		for (final int count : new int[] { 1, 2, 3, 13, 1025 }) {
+			final int[][] changes = {
+			        {},
+			        { 0 },
+			        { count - 1 },
+			        IntStream.range(0, count).filter(i -> i % 3 == 1).toArray(),
+			        IntStream.range(0, count).toArray(),
+			};
+
+			for (final int[] changed : changes) {
+				final TreeLeaf<String, ?>[] leaves = leaves(count);
+
+				for (final int i : changed) {
+					leaves[i] = new TreeLeaf<>("changed-" + i, null);
+				}
+
+				final TreeRoot<String> root = tbld.build(leaves(count));
+				final TreeRoot<String> other = tbld.build(leaves);
+
+				assertArrayEquals(changed, root.diff(other, Objects::equals).toArray());
+			}
+		}
+
+		final TreeRoot<String> root = tbld.build(leaves(1025));
+		final TreeLeaf<String, ?>[] leaves = leaves(1025);
+
+		leaves[7] = new TreeLeaf<>("changed", null);
+		leaves[700] = new TreeLeaf<>("changed", null);
+
+		// the stream is consumed lazily
+		assertThat(root.diff(tbld.build(leaves), Objects::equals).findFirst().getAsInt(), equalTo(7));
+	}
+}
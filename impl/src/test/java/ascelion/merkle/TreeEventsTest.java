@@ -0,0 +1,86 @@
+package ascelion.merkle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+public class TreeEventsTest {
+
+	static private List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+		return events.stream()
+		        .filter(e -> e.getEventType().getName().equals(name))
+		        .collect(toList());
+	}
+
+	@Test
+	public void recorded() throws IOException {
+		final Path file = Files.createTempFile("merkle", ".jfr");
+		final TreeBuilder<String> tbld = builder("-").lazy(true);
+
+		try (Recording rec = new Recording()) {
+			rec.enable("ascelion.merkle.Build").withoutThreshold();
+			rec.enable("ascelion.merkle.Proof").withoutThreshold();
+			rec.enable("ascelion.merkle.Verify").withoutThreshold();
+			rec.start();
+
+			final TreeRoot<String> root = tbld.build(leaves(13));
+
+			assertThat(tbld.isValid(root.proof(5), 5, 13, Objects::equals), is(true));
+			assertThat(root.rangeProof(2, 9), hasSize(4));
+
+			tbld.update(root, 2, new TreeLeaf<>("X", null));
+			tbld.rebuild(root, leaves(13), Objects::equals);
+
+			rec.stop();
+			rec.dump(file);
+		}
+
+		try {
+			final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			final List<RecordedEvent> builds = events(events, "ascelion.merkle.Build");
+			final List<RecordedEvent> proofs = events(events, "ascelion.merkle.Proof");
+			final List<RecordedEvent> verifs = events(events, "ascelion.merkle.Verify");
+
+			assertThat(builds, hasSize(3));
+			assertThat(builds.get(0).getString("kind"), equalTo("build"));
+			assertThat(builds.get(0).getInt("leaves"), equalTo(13));
+			assertThat(builds.get(0).getInt("width"), equalTo(16));
+			assertThat(builds.get(0).getInt("height"), equalTo(5));
+			assertThat(builds.get(0).getInt("hashes"), equalTo(15));
+
+			// the path of the leaf
+			assertThat(builds.get(1).getString("kind"), equalTo("update"));
+			assertThat(builds.get(1).getInt("hashes"), equalTo(4));
+
+			// the paths of the leaf and of the three fillers
+			assertThat(builds.get(2).getString("kind"), equalTo("rebuild"));
+			assertThat(builds.get(2).getInt("hashes"), equalTo(8));
+
+			assertThat(proofs, hasSize(2));
+			assertThat(proofs.get(0).getString("kind"), equalTo("chain"));
+			assertThat(proofs.get(1).getString("kind"), equalTo("range"));
+			assertThat(proofs.get(1).getInt("leaves"), equalTo(7));
+			assertThat(proofs.get(1).getInt("size"), equalTo(4));
+
+			assertThat(verifs, hasSize(1));
+			assertThat(verifs.get(0).getBoolean("valid"), is(true));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package ascelion.merkle;
+
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Trees of strings shared by the tests; a node hash is the concatenation of its children, so the expected values can
+ * be written down.
+ */
+final class TreeFixtures {
+
+	@FunctionalInterface
+	interface ShapeTest {
+		void run(TreeBuilder<String> tbld, int count);
+	}
+
+	static final BinaryOperator<String> CONCAT = (s1, s2) -> s1 + s2;
+
+	static TreeLeaf<String, ?>[] leaves(int count) {
+		return IntStream.range(0, count)
+		        .mapToObj(n -> Integer.toString(n, Character.MAX_RADIX))
+		        .map(s -> new TreeLeaf<>(s, null))
+		        .toArray(TreeLeaf[]::new);
+	}
+
+	static TreeBuilder<String> builder(String zero) {
+		return new TreeBuilder<>(UnaryOperator.identity(), CONCAT, zero);
+	}
+
+	/**
+	 * Runs a test for each count with the padded, compact, unbalanced and compact unbalanced shapes, passing a new
+	 * builder each time.
+	 */
+	static void forEachShape(String zero, int[] counts, ShapeTest test) {
+		for (final boolean compact : new boolean[] { false, true }) {
+			for (final boolean unbalanced : new boolean[] { false, true }) {
+				for (final int count : counts) {
+					test.run(builder(zero).compact(compact).unbalanced(unbalanced), count);
+				}
+			}
+		}
+	}
+
+	private TreeFixtures() {
+	}
+}
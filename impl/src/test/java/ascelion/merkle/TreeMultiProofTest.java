@@ -0,0 +1,122 @@
+package ascelion.merkle;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.forEachShape;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TreeMultiProofTest {
+
+	@Test
+	public void checkProof() {
+		final TreeBuilder<String> tbld = builder("-");
+		final TreeRoot<String> root = tbld.build(leaves(13));
+
+		assertThat(root.multiProof(8, 9, 10), equalTo(asList("b", "c---", "01234567")));
+		assertThat(root.multiProof(0, 12), equalTo(asList("1", "-", "23", "--", "4567", "89ab")));
+		assertThat(root.multiProof(12, 0, 12), equalTo(root.multiProof(0, 12)));
+
+		final Map<Integer, String> leaves = new TreeMap<>();
+
+		leaves.put(8, "8");
+		leaves.put(9, "9");
+		leaves.put(10, "a");
+
+		assertThat(tbld.isValid(leaves, root.multiProof(8, 9, 10), 13, root.hash(), Objects::equals), is(true));
+		assertThat(tbld.isValid(leaves, root.multiProof(8, 9), 13, root.hash(), Objects::equals), is(false));
+
+		leaves.put(10, "b");
+
+		assertThat(tbld.isValid(leaves, root.multiProof(8, 9, 10), 13, root.hash(), Objects::equals), is(false));
+	}
+
+	@Test
+	public void allLeaves() {
+		final TreeBuilder<String> tbld = builder("-").unbalanced(true);
+		final TreeRoot<String> root = tbld.build(leaves(7));
+
+		assertThat(root.multiProof(0, 1, 2, 3, 4, 5, 6), is(empty()));
+	}
+
+	@Test
+	public void allModes() {
+		final Random rnd = new Random(271828);
+
+		forEachShape("-", new int[] { 1, 2, 7, 13, 100, 1000 }, (tbld, count) -> {
+			final TreeRoot<String> root = tbld.build(leaves(count));
+
+			for (int round = 0; round < 10; round++) {
+				final int[] indices = rnd.ints(rnd.nextInt(count) + 1, 0, count).toArray();
+				final List<String> proof = root.multiProof(indices);
+				final Map<Integer, String> leaves = new TreeMap<>();
+				final Set<String> chains = new HashSet<>();
+
+				for (final int index : indices) {
+					final List<String> chain = root.getLeaf(index).getChain();
+
+					leaves.put(index, chain.get(0));
+					chains.addAll(chain.subList(1, chain.size() - 1));
+				}
+
+				chains.removeAll(leaves.values());
+
+				assertThat(proof.size(), lessThanOrEqualTo(chains.size()));
+				assertThat(tbld.isValid(leaves, proof, count, root.hash(), Objects::equals), is(true));
+
+				final List<String> tampered = new ArrayList<>(proof);
+
+				tampered.add("x");
+
+				assertThat(tbld.isValid(leaves, tampered, count, root.hash(), Objects::equals), is(false));
+			}
+		});
+	}
+
+	@Test
+	public void rangeProof() {
+		forEachShape("-", new int[] { 1, 2, 7, 13, 100 }, (tbld, count) -> {
+			final TreeRoot<String> root = tbld.build(leaves(count));
+
+			for (int from = 0; from < count; from++) {
+				for (int to = from + 1; to <= count; to++) {
+					final List<String> proof = root.rangeProof(from, to);
+					final List<String> hashes = new ArrayList<>();
+
+					for (int k = from; k < to; k++) {
+						hashes.add(root.getLeaf(k).hash());
+					}
+
+					assertThat(proof, equalTo(root.multiProof(IntStream.range(from, to).toArray())));
+					assertThat(proof.size(), lessThanOrEqualTo(2 * (root.height() - 1)));
+					assertThat(tbld.isValid(from, hashes, proof, count, root.hash(), Objects::equals), is(true));
+
+					hashes.set(hashes.size() - 1, "X");
+
+					assertThat(tbld.isValid(from, hashes, proof, count, root.hash(), Objects::equals), is(false));
+				}
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyRange() {
+		builder("-").build(leaves(13)).rangeProof(5, 5);
+	}
+}
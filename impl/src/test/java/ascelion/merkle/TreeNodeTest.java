@@ -212,6 +212,34 @@ public class TreeNodeTest {
 		verifyTree(root, 5);
 	}
 
+	@Test(expected = UnsupportedOperationException.class)
+	public void foreignRoot() {
+		// an implementation written against the original interface
+		final TreeRoot<String> root = new TreeRoot<String>() {
+			@Override
+			public String hash() {
+				return ZERO;
+			}
+
+			@Override
+			public int height() {
+				return 1;
+			}
+
+			@Override
+			public int count() {
+				return 0;
+			}
+
+			@Override
+			public <L extends TreeLeaf<String, ?>> L getLeaf(int index) {
+				return null;
+			}
+		};
+
+		root.proof(0);
+	}
+
 	private <T> void verifyTree(TreeNode<String> node, int height) {
 		assertTrue((node.left == null) == (node.right == null));
 
@@ -0,0 +1,46 @@
+package ascelion.merkle;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TreeParallelTest {
+
+	final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	public void sameAsSequential() {
+		for (final int count : new int[] { 1, 2, 3, 1024, 1025, 5000 }) {
+			final TreeLeaf<String, ?>[] seqLeaves = leaves(count);
+			final TreeLeaf<String, ?>[] parLeaves = leaves(count);
+
+			final TreeRoot<String> seq = builder("").build(seqLeaves);
+			final TreeRoot<String> par = builder("")
+			        .parallel(this.pool)
+			        .build(parLeaves);
+
+			assertThat(par.hash(), equalTo(seq.hash()));
+			assertThat(par.height(), equalTo(seq.height()));
+			assertThat(par.count(), equalTo(seq.count()));
+
+			for (int i = 0; i < count; i++) {
+				final List<String> chain = parLeaves[i].getChain();
+
+				assertThat(chain, equalTo(seqLeaves[i].getChain()));
+				assertThat(par.getLeaf(i), equalTo(parLeaves[i]));
+			}
+		}
+	}
+}
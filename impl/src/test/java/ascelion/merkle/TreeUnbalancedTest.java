@@ -0,0 +1,105 @@
+package ascelion.merkle;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TreeUnbalancedTest {
+
+	final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	public void checkChain() {
+		final TreeBuilder<String> tbld = builder("-").unbalanced(true);
+		final TreeLeaf<String, ?>[] leaves = leaves(13);
+		final TreeRoot<String> root = tbld.build(leaves);
+
+		assertThat(root.hash(), equalTo("0123456789abc"));
+		assertThat(root.height(), equalTo(5));
+
+		// c is promoted twice
+		assertThat(leaves[12].getChain(), equalTo(asList("c", "89ab", "01234567", "0123456789abc")));
+		assertThat(leaves[9].getChain(), equalTo(asList("9", "8", "ab", "c", "01234567", "0123456789abc")));
+
+		assertThat(tbld.isValid(leaves[12].getChain(), 12, 13, Objects::equals), is(true));
+		assertThat(tbld.isValid(leaves[12].getChain(), 12, 14, Objects::equals), is(false));
+		assertThat(tbld.isValid(leaves[9].getChain(), 9, 13, Objects::equals), is(true));
+	}
+
+	@Test
+	public void withOne() {
+		final TreeBuilder<String> tbld = builder("-").unbalanced(true);
+		final TreeRoot<String> root = tbld.build(leaves(1));
+
+		assertThat(root.hash(), equalTo("0-"));
+		assertThat(root.height(), equalTo(2));
+		assertThat(tbld.accumulator().add("0").hash(), equalTo("0-"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void requireCount() {
+		final TreeBuilder<String> tbld = builder("-").unbalanced(true);
+
+		tbld.isValid(asList("0", "1", "01"), 0, Objects::equals);
+	}
+
+	@Test
+	public void allModes() {
+		for (final int count : new int[] { 2, 3, 5, 6, 7, 13, 17, 1025, 3000 }) {
+			final TreeLeaf<String, ?>[] expected = leaves(count);
+			final TreeRoot<String> reference = builder("-")
+			        .unbalanced(true)
+			        .build(expected);
+			final TreeAccumulator<String> acc = builder("-")
+			        .unbalanced(true)
+			        .accumulator();
+
+			for (final TreeLeaf<String, ?> leaf : expected) {
+				acc.add(leaf.hash());
+			}
+
+			assertThat(acc.hash(), equalTo(reference.hash()));
+			assertThat(acc.height(), equalTo(reference.height()));
+
+			for (final boolean compact : new boolean[] { false, true }) {
+				for (final ForkJoinPool pool : new ForkJoinPool[] { null, this.pool }) {
+					final TreeBuilder<String> tbld = builder("-")
+					        .unbalanced(true)
+					        .compact(compact)
+					        .parallel(pool);
+					final TreeLeaf<String, ?>[] leaves = leaves(count);
+					final TreeRoot<String> root = tbld.build(leaves);
+
+					assertThat(root.hash(), equalTo(reference.hash()));
+					assertThat(root.height(), equalTo(reference.height()));
+					assertThat(root.count(), equalTo(count));
+
+					for (int i = 0; i < count; i++) {
+						final List<String> chain = leaves[i].getChain();
+
+						assertThat(root.getLeaf(i), sameInstance(leaves[i]));
+						assertThat(chain, equalTo(expected[i].getChain()));
+						assertThat(root.proof(i), equalTo(chain));
+						assertThat(tbld.isValid(chain, i, count, Objects::equals), is(true));
+					}
+				}
+			}
+		}
+	}
+}
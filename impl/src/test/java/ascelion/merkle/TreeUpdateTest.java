@@ -0,0 +1,156 @@
+package ascelion.merkle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.forEachShape;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TreeUpdateTest {
+
+	@Test(expected = IllegalStateException.class)
+	public void withEager() {
+		final TreeBuilder<String> tbld = builder("-");
+		final TreeRoot<String> root = tbld.build(leaves(5));
+
+		tbld.update(root, 2, new TreeLeaf<>("X", null));
+	}
+
+	@Test
+	public void updateOne() {
+		final TreeBuilder<String> tbld = builder("-").lazy(true);
+		final TreeRoot<String> root = tbld.build(leaves(5));
+		final TreeLeaf<String, ?> leaf = new TreeLeaf<>("X", null);
+
+		assertThat(tbld.update(root, 2, leaf), sameInstance(root));
+
+		assertThat(root.hash(), equalTo("01X34---"));
+		assertThat(root.getLeaf(2), sameInstance(leaf));
+	}
+
+	@Test
+	public void updateMany() {
+		final Random rnd = new Random(314159);
+
+		forEachShape("-", new int[] { 1, 2, 7, 13, 100 }, (tbld, count) -> {
+			tbld.lazy(true);
+
+			final TreeRoot<String> root = tbld.build(leaves(count));
+			final String[] hashes = new String[count];
+
+			for (int i = 0; i < count; i++) {
+				hashes[i] = root.getLeaf(i).hash();
+			}
+
+			for (int round = 0; round < 10; round++) {
+				final Map<Integer, TreeLeaf<String, ?>> changes = new HashMap<>();
+
+				for (int k = rnd.nextInt(count) + 1; k > 0; k--) {
+					final int index = rnd.nextInt(count);
+					final TreeLeaf<String, ?> leaf = new TreeLeaf<>(Integer.toString(rnd.nextInt(36), 36), null);
+
+					changes.put(index, leaf);
+				}
+
+				tbld.update(root, changes);
+
+				changes.forEach((index, leaf) -> hashes[index] = leaf.hash());
+
+				// leaves cannot be shared between trees
+				final TreeRoot<String> expected = tbld.build(Stream.of(hashes)
+				        .map(h -> new TreeLeaf<>(h, null))
+				        .toArray(TreeLeaf[]::new));
+
+				assertThat(root.hash(), equalTo(expected.hash()));
+
+				for (int i = 0; i < count; i++) {
+					assertThat(root.getLeaf(i).hash(), equalTo(hashes[i]));
+					assertThat(root.proof(i), equalTo(expected.proof(i)));
+					assertThat(tbld.isValid(root.proof(i), i, count, Objects::equals), is(true));
+				}
+			}
+		});
+	}
+
+	@Test
+	public void rebuild() {
+		final Random rnd = new Random(271828);
+
+		forEachShape("-", new int[] { 1, 2, 7, 13, 100 }, (tbld, count) -> {
+			final TreeRoot<String> root = tbld.build(leaves(count));
+
+			for (final int size : new int[] { 1, count / 2 + 1, count, count + 1, 2 * count + 3 }) {
+				final String[] hashes = new String[size];
+
+				for (int i = 0; i < size; i++) {
+					hashes[i] = i < count && rnd.nextInt(4) > 0
+					        ? root.getLeaf(i).hash()
+					        : Integer.toString(rnd.nextInt(36 * 36), 36);
+				}
+
+				final TreeRoot<String> rebuilt = tbld.rebuild(root, Stream.of(hashes)
+				        .map(h -> new TreeLeaf<>(h, null))
+				        .toArray(TreeLeaf[]::new), Objects::equals);
+				final TreeRoot<String> expected = tbld.build(Stream.of(hashes)
+				        .map(h -> new TreeLeaf<>(h, null))
+				        .toArray(TreeLeaf[]::new));
+
+				assertThat(rebuilt.hash(), equalTo(expected.hash()));
+				assertThat(rebuilt.height(), equalTo(expected.height()));
+
+				for (int i = 0; i < size; i++) {
+					assertThat(rebuilt.getLeaf(i).getChain(), equalTo(expected.getLeaf(i).getChain()));
+				}
+			}
+
+			// the previous tree is not modified
+			assertThat(root.hash(), equalTo(tbld.build(leaves(count)).hash()));
+		});
+	}
+
+	@Test
+	public void rebuildHashesChangedPaths() {
+		final AtomicInteger hashed = new AtomicInteger();
+		final TreeHash<String> hashFn = new TreeHash<String>() {
+			@Override
+			public String hash(String value) {
+				return value;
+			}
+
+			@Override
+			public String hash(String left, String right) {
+				hashed.incrementAndGet();
+
+				return left + right;
+			}
+		};
+		final TreeBuilder<String> tbld = new TreeBuilder<>(hashFn, "-").lazy(true);
+		final TreeRoot<String> root = tbld.build(leaves(1024));
+		final TreeLeaf<String, ?>[] leaves = leaves(1024);
+
+		leaves[100] = new TreeLeaf<>("X", null);
+
+		hashed.set(0);
+
+		final TreeRoot<String> rebuilt = tbld.rebuild(root, leaves, Objects::equals);
+
+		assertThat(hashed.get(), equalTo(root.height() - 1));
+
+		final TreeLeaf<String, ?>[] expected = leaves(1024);
+
+		expected[100] = new TreeLeaf<>("X", null);
+
+		assertThat(rebuilt.hash(), equalTo(tbld.build(expected).hash()));
+	}
+}
@@ -1,11 +1,18 @@
 package ascelion.merkle;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BinaryOperator;
 import java.util.function.UnaryOperator;
 import java.util.stream.IntStream;
 
+import static ascelion.merkle.TreeFixtures.builder;
+import static ascelion.merkle.TreeFixtures.leaves;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -35,6 +42,92 @@ public class TreeVerifyTest {
 			assertThat(chain.size(), equalTo(root.height() + 1));
 
 			assertThat(leaf.toString(), tbld.isValid(chain, i, Objects::equals), is(true));
+			assertThat(leaf.toString(), tbld.isValid(chain, i, leaves.length, Objects::equals), is(true));
+		}
+	}
+
+	@Test
+	public void verifyLazy() {
+		for (final boolean compact : new boolean[] { false, true }) {
+			final TreeBuilder<String> tbld = builder("");
+			final TreeLeaf<String, ?>[] eager = leaves(27);
+			final TreeLeaf<String, ?>[] lazy = leaves(27);
+
+			tbld.compact(compact).build(eager);
+
+			final TreeRoot<String> root = tbld.lazy(true).build(lazy);
+
+			for (int i = 0; i < lazy.length; i++) {
+				final List<String> chain = root.proof(i);
+
+				assertThat(lazy[i].getChain(), is(empty()));
+				assertThat(chain, equalTo(eager[i].getChain()));
+
+				assertThat(tbld.isValid(chain, i, Objects::equals), is(true));
+			}
+		}
+	}
+
+	@Test
+	public void verifyBatch() {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (final boolean unbalanced : new boolean[] { false, true }) {
+				final TreeBuilder<String> tbld = builder("")
+				        .unbalanced(unbalanced)
+				        .parallel(pool);
+				final TreeRoot<String> root = tbld.build(leaves(3000));
+				final List<List<String>> chains = new ArrayList<>();
+				final int[] indices = new int[2 * root.count()];
+				final BitSet expected = new BitSet();
+
+				for (int i = 0; i < indices.length; i++) {
+					final int index = i % root.count();
+					final List<String> chain = new ArrayList<>(root.getLeaf(index).getChain());
+
+					if (i % 7 == 3) {
+						chain.set(0, "x");
+					} else if (i % 13 == 6 && chain.size() > 2) {
+						// an upper sibling, above the nodes verified by the other chains
+						chain.set(chain.size() - 2, "x");
+					} else if (i % 11 == 5) {
+						chain.remove(1);
+					} else {
+						expected.set(i);
+					}
+
+					chains.add(chain);
+					indices[i] = index;
+				}
+
+				for (int i = 0; i < indices.length; i++) {
+					assertThat(tbld.isValid(chains.get(i), indices[i], root.count(), Objects::equals), equalTo(expected.get(i)));
+				}
+
+				assertThat(tbld.validate(chains, indices, root.count(), root.hash(), Objects::equals), equalTo(expected));
+				assertThat(tbld.parallel(null).validate(chains, indices, root.count(), root.hash(), Objects::equals),
+				        equalTo(expected));
+
+				// the same chains in the reverse order, so the tampered ones come before or after the valid ones
+				final List<List<String>> reversed = new ArrayList<>(chains);
+				final int[] rindices = new int[indices.length];
+				final BitSet rexpected = new BitSet();
+
+				Collections.reverse(reversed);
+
+				for (int i = 0; i < indices.length; i++) {
+					rindices[i] = indices[indices.length - 1 - i];
+					rexpected.set(i, expected.get(indices.length - 1 - i));
+				}
+
+				assertThat(tbld.parallel(pool).validate(reversed, rindices, root.count(), root.hash(), Objects::equals),
+				        equalTo(rexpected));
+				assertThat(tbld.parallel(null).validate(reversed, rindices, root.count(), root.hash(), Objects::equals),
+				        equalTo(rexpected));
+			}
+		} finally {
+			pool.shutdown();
 		}
 	}
 }
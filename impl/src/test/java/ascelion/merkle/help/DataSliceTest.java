@@ -1,11 +1,27 @@
 package ascelion.merkle.help;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeHash;
 import ascelion.merkle.TreeLeaf;
 import ascelion.merkle.TreeRoot;
 
@@ -13,6 +29,7 @@ import static java.lang.Thread.currentThread;
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
@@ -51,4 +68,169 @@ public class DataSliceTest {
 		}
 	}
 
+	@Test
+	public void buildFromFileInParallel() throws IOException, NoSuchAlgorithmException {
+		final Path file = Files.createTempFile("merkle-", ".bin");
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		// several batches of the parallel build, not a multiple of the slice size
+		final byte[] data = new byte[5 * (1 << 20) + 1234];
+
+		new Random(314159).nextBytes(data);
+
+		Files.write(file, data);
+
+		try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ);
+		        InputStream ist = Files.newInputStream(file)) {
+			final TreeBuilder<byte[]> tbld = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+			final TreeRoot<byte[]> expected = DataSlice.buildTree(tbld, 4096, ist);
+			final TreeRoot<byte[]> root = DataSlice.buildTree(tbld, 4096, chn, pool);
+
+			assertThat(root.hash(), equalTo(expected.hash()));
+			assertThat(root.count(), equalTo(expected.count()));
+			assertThat(root.count(), equalTo((data.length + 4095) / 4096));
+
+			for (int k = 0; k < root.count(); k++) {
+				final TreeLeaf<byte[], byte[]> leaf = root.getLeaf(k);
+
+				assertThat(leaf.getContent(), equalTo(expected.<TreeLeaf<byte[], byte[]>> getLeaf(k).getContent()));
+				assertThat(tbld.isValid(leaf.getChain(), k, Arrays::equals), is(true));
+			}
+		} finally {
+			pool.shutdown();
+
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void buildFromStreamPipelined() throws IOException, NoSuchAlgorithmException {
+		final ExecutorService exec = Executors.newFixedThreadPool(3);
+		final ExecutorService single = Executors.newSingleThreadExecutor();
+
+		try {
+			verifyPipelined(exec, 3);
+			// more hashers than threads, or the hashers running in the reading thread
+			verifyPipelined(single, 4);
+			verifyPipelined(Runnable::run, 2);
+		} finally {
+			exec.shutdown();
+			single.shutdown();
+		}
+	}
+
+	@Test
+	public void buildFromStreamPipelinedWithBusyExecutor() throws Exception {
+		final ExecutorService exec = Executors.newSingleThreadExecutor();
+		final CountDownLatch busy = new CountDownLatch(1);
+
+		try {
+			// the only thread is taken, so none of the hashers can start
+			exec.execute(() -> {
+				try {
+					busy.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			verifyPipelined(exec, 2);
+		} finally {
+			busy.countDown();
+			exec.shutdown();
+		}
+	}
+
+	@Test
+	public void buildFromStreamPipelinedReadsAhead() throws Exception {
+		final DigestHash digest = new DigestHash("SHA-256");
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final TreeHash<byte[]> hashFn = new TreeHash<byte[]>() {
+			@Override
+			public byte[] hash(byte[] value) {
+				try {
+					stalled.await();
+				} catch (final InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+
+				return digest.hash(value);
+			}
+
+			@Override
+			public byte[] hash(byte[] left, byte[] right) {
+				return digest.hash(left, right);
+			}
+		};
+		final byte[] data = new byte[100 * 64];
+		final AtomicLong read = new AtomicLong();
+		final InputStream ist = new FilterInputStream(new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				final int count = super.read(b, off, len);
+
+				if (count > 0) {
+					read.addAndGet(count);
+				}
+
+				return count;
+			}
+		};
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+		new Random(271828).nextBytes(data);
+
+		try {
+			final Future<TreeRoot<byte[]>> root = reader
+			        .submit(() -> DataSlice.buildTree(new TreeBuilder<>(hashFn, new byte[0]), 64, ist, exec, 2));
+
+			Thread.sleep(200);
+
+			// the hashers are stuck, so the reader stops when the four buffers are in use
+			assertThat(read.get(), lessThanOrEqualTo(4L * 64));
+
+			stalled.countDown();
+
+			final TreeRoot<byte[]> expected = DataSlice.buildTree(new TreeBuilder<>(digest, new byte[0]), 64,
+			        new ByteArrayInputStream(data));
+
+			assertThat(root.get().hash(), equalTo(expected.hash()));
+
+			for (int k = 0; k < expected.count(); k++) {
+				assertThat(root.get().<DataSlice> getLeaf(k).getContent(),
+				        equalTo(expected.<DataSlice> getLeaf(k).getContent()));
+			}
+		} finally {
+			stalled.countDown();
+			reader.shutdown();
+			exec.shutdown();
+		}
+	}
+
+	private void verifyPipelined(Executor exec, int hashers) throws IOException, NoSuchAlgorithmException {
+		final TreeBuilder<byte[]> tbld = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+		final TreeRoot<byte[]> expected;
+		final TreeRoot<byte[]> root;
+
+		try (InputStream ist = currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png")) {
+			expected = DataSlice.buildTree(tbld, 100, ist);
+		}
+		try (InputStream ist = currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png")) {
+			root = DataSlice.buildTree(tbld, 100, ist, exec, hashers);
+		}
+
+		assertThat(root.hash(), equalTo(expected.hash()));
+		assertThat(root.count(), equalTo(expected.count()));
+
+		for (int k = 0; k < root.count(); k++) {
+			final TreeLeaf<byte[], byte[]> leaf = root.getLeaf(k);
+
+			assertThat(leaf.getContent(), equalTo(expected.<TreeLeaf<byte[], byte[]>> getLeaf(k).getContent()));
+			assertThat(tbld.isValid(leaf.getChain(), k, Arrays::equals), is(true));
+		}
+	}
 }
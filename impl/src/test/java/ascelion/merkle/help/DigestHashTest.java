@@ -0,0 +1,52 @@
+package ascelion.merkle.help;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeRoot;
+
+import static java.lang.Thread.currentThread;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+public class DigestHashTest {
+
+	@Test
+	public void hashNodes() throws NoSuchAlgorithmException {
+		final DigestHash hash = new DigestHash("SHA-256");
+		final byte[] left = DigestUtils.sha256("left");
+		final byte[] right = DigestUtils.sha256("right");
+
+		assertThat(hash.getAlgorithm(), equalTo("SHA-256"));
+		assertThat(hash.hash(left), equalTo(DigestUtils.sha256(left)));
+		assertThat(hash.hash(left, right), equalTo(DigestUtils.sha256(DataSlice.concat(left, right))));
+	}
+
+	@Test
+	public void sameAsConcat() throws IOException, NoSuchAlgorithmException {
+		final TreeBuilder<byte[]> tbld1 = new TreeBuilder<>(DigestUtils::sha256, DataSlice::concat, new byte[0]);
+		final TreeBuilder<byte[]> tbld2 = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+
+		final TreeRoot<byte[]> root1 = DataSlice.buildTree(tbld1, 512, resource());
+		final TreeRoot<byte[]> root2 = DataSlice.buildTree(tbld2, 512, resource());
+
+		assertThat(root2.hash(), equalTo(root1.hash()));
+
+		for (int k = 0; k < root2.count(); k++) {
+			assertThat(tbld2.isValid(root2.getLeaf(k).getChain(), k, Arrays::equals), is(true));
+		}
+	}
+
+	private InputStream resource() {
+		return currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png");
+	}
+}
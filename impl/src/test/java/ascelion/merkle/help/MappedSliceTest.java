@@ -0,0 +1,122 @@
+package ascelion.merkle.help;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+
+import static java.lang.Thread.currentThread;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class MappedSliceTest {
+
+	@Test
+	public void sameAsDataSlice() throws IOException, NoSuchAlgorithmException {
+		final Path file = Files.createTempFile("merkle-", ".png");
+
+		try (InputStream ist = currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png")) {
+			Files.copy(ist, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		try {
+			final TreeBuilder<byte[]> tbld = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+			final TreeRoot<byte[]> expected;
+			final TreeRoot<byte[]> root;
+
+			try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ)) {
+				expected = DataSlice.buildTree(tbld, 500, chn);
+			}
+			try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ)) {
+				root = MappedSlice.buildTree(tbld, 500, chn);
+			}
+
+			assertThat(root.hash(), equalTo(expected.hash()));
+			assertThat(root.count(), equalTo(expected.count()));
+
+			for (int k = 0; k < root.count(); k++) {
+				final MappedSlice leaf = root.getLeaf(k);
+				final TreeLeaf<byte[], byte[]> data = expected.getLeaf(k);
+
+				assertThat(leaf.getOffset(), equalTo(500L * k));
+				assertThat(leaf.getContent(), equalTo(ByteBuffer.wrap(data.getContent())));
+				assertThat(leaf.hash(), equalTo(data.hash()));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void updateChangedSlices() throws IOException, NoSuchAlgorithmException {
+		final Path file = Files.createTempFile("merkle-", ".png");
+
+		try (InputStream ist = currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png")) {
+			Files.copy(ist, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		try {
+			final TreeBuilder<byte[]> tbld = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+			final TreeRoot<byte[]> prev;
+
+			try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ)) {
+				prev = MappedSlice.buildTree(tbld, 500, chn);
+			}
+
+			// change a byte of the third slice and append some bytes
+			try (FileChannel chn = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				chn.write(ByteBuffer.wrap(new byte[] { 42 }), 1234);
+				chn.write(ByteBuffer.wrap(new byte[700]), chn.size());
+			}
+
+			final List<Integer> tested = new ArrayList<>();
+			final TreeRoot<byte[]> rehashed;
+			final TreeRoot<byte[]> known;
+			final TreeRoot<byte[]> expected;
+
+			try (FileChannel chn = FileChannel.open(file, StandardOpenOption.READ)) {
+				rehashed = MappedSlice.updateTree(tbld, 500, chn, prev);
+				// the written slices are known, the last one has grown and the appended ones are new
+				known = MappedSlice.updateTree(tbld, 500, chn, prev, (index, content) -> {
+					tested.add(index);
+
+					return index == 2;
+				});
+				expected = MappedSlice.buildTree(tbld, 500, chn);
+			}
+
+			assertThat(tested.size(), equalTo(expected.count()));
+
+			for (final TreeRoot<byte[]> root : Arrays.asList(rehashed, known)) {
+				assertThat(root.hash(), equalTo(expected.hash()));
+				assertThat(root.count(), equalTo(expected.count()));
+
+				for (int k = 0; k < root.count(); k++) {
+					assertThat(root.<MappedSlice> getLeaf(k).hash(), equalTo(expected.<MappedSlice> getLeaf(k).hash()));
+					assertThat(tbld.isValid(root.getLeaf(k).getChain(), k, Arrays::equals), is(true));
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package ascelion.merkle.help;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.stream.IntStream;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ProofTest {
+
+	@Test
+	public void roundTrip() throws IOException, NoSuchAlgorithmException {
+		for (final boolean unbalanced : new boolean[] { false, true }) {
+			final DigestHash hashFn = new DigestHash("SHA-256");
+			final TreeBuilder<byte[]> tbld = new TreeBuilder<>(hashFn, new byte[32]).unbalanced(unbalanced).lazy(true);
+			final TreeRoot<byte[]> root = tbld.build(IntStream.range(0, 13)
+			        .mapToObj(k -> new TreeLeaf<>(hashFn.hash(new byte[] { (byte) k }), null))
+			        .toArray(TreeLeaf[]::new));
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				for (int k = 0; k < root.count(); k++) {
+					Proof.of(root, k).writeTo(out);
+				}
+			}
+
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				for (int k = 0; k < root.count(); k++) {
+					final Proof proof = Proof.readFrom(in);
+
+					assertThat(proof.getIndex(), equalTo(k));
+					assertThat(proof.getCount(), equalTo(root.count()));
+					assertThat(proof.getHeight(), equalTo(root.height()));
+					assertThat(proof.getChain().size(), equalTo(root.proof(k).size()));
+					assertArrayEquals(root.hash(), proof.getChain().get(proof.getChain().size() - 1));
+					assertThat(proof.isValid(tbld), is(true));
+				}
+
+				assertThat(in.read(), equalTo(-1));
+			}
+		}
+	}
+
+	@Test
+	public void size() throws IOException, NoSuchAlgorithmException {
+		final DigestHash hashFn = new DigestHash("SHA-256");
+		final TreeBuilder<byte[]> tbld = new TreeBuilder<>(hashFn, new byte[32]).lazy(true);
+		final TreeRoot<byte[]> root = tbld.build(IntStream.range(0, 1000)
+		        .mapToObj(k -> new TreeLeaf<>(hashFn.hash(new byte[] { (byte) k }), null))
+		        .toArray(TreeLeaf[]::new));
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		Proof.of(root, 999).writeTo(new DataOutputStream(bytes));
+
+		// the header and the leaf, 10 siblings and the root
+		assertThat(bytes.size(), equalTo(11 + 12 * 32));
+		assertThat(Proof.of(root, 1000), nullValue());
+	}
+}
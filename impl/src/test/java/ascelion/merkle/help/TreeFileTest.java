@@ -0,0 +1,148 @@
+package ascelion.merkle.help;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeRoot;
+
+import static java.lang.Thread.currentThread;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeFileTest {
+
+	private Path data;
+	private Path file;
+	private TreeBuilder<byte[]> tbld;
+
+	@Before
+	public void setUp() throws IOException, NoSuchAlgorithmException {
+		this.data = Files.createTempFile("merkle-", ".png");
+		this.file = Files.createTempFile("merkle-", ".tree");
+		this.tbld = new TreeBuilder<>(new DigestHash("SHA-256"), new byte[0]);
+
+		try (InputStream ist = currentThread()
+		        .getContextClassLoader()
+		        .getResourceAsStream("top-background-trn.png")) {
+			Files.copy(ist, this.data, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.delete(this.data);
+		Files.deleteIfExists(this.file);
+	}
+
+	@Test
+	public void restore() throws IOException {
+		verifyRestore(500);
+	}
+
+	@Test
+	public void restoreUnbalanced() throws IOException {
+		this.tbld.unbalanced(true);
+
+		verifyRestore(300);
+	}
+
+	@Test
+	public void staleWhenModified() throws IOException {
+		save(500);
+
+		Files.setLastModifiedTime(this.data, FileTime.fromMillis(Files.getLastModifiedTime(this.data).toMillis() + 1000));
+
+		assertThat(TreeFile.read(this.tbld, "SHA-256", 500, this.data, this.file), nullValue());
+	}
+
+	@Test
+	public void staleWhenConfigurationChanges() throws IOException {
+		save(500);
+
+		assertThat(TreeFile.read(this.tbld, "SHA-512", 500, this.data, this.file), nullValue());
+		assertThat(TreeFile.read(this.tbld, "SHA-256", 400, this.data, this.file), nullValue());
+	}
+
+	@Test
+	public void missing() throws IOException {
+		Files.delete(this.file);
+
+		assertThat(TreeFile.read(this.tbld, "SHA-256", 500, this.data, this.file), nullValue());
+	}
+
+	@Test(expected = IOException.class)
+	public void corrupted() throws IOException {
+		save(500);
+
+		final byte[] content = Files.readAllBytes(this.file);
+
+		Files.write(this.file, Arrays.copyOf(content, content.length - 1));
+
+		TreeFile.read(this.tbld, "SHA-256", 500, this.data, this.file);
+	}
+
+	@Test(expected = IOException.class)
+	public void corruptedLength() throws IOException {
+		save(500);
+
+		final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(this.file));
+
+		// the length of a hash, after the magic, the version, the algorithm, the data size and time, the slice size
+		content.putInt(4 + 4 + 2 + "SHA-256".length() + 8 + 8 + 4, Integer.MAX_VALUE);
+
+		Files.write(this.file, content.array());
+
+		TreeFile.read(this.tbld, "SHA-256", 500, this.data, this.file);
+	}
+
+	private TreeRoot<byte[]> save(int size) throws IOException {
+		final BasicFileAttributes attrs = Files.readAttributes(this.data, BasicFileAttributes.class);
+
+		try (FileChannel chn = FileChannel.open(this.data, StandardOpenOption.READ)) {
+			final TreeRoot<byte[]> root = MappedSlice.buildTree(this.tbld, size, chn);
+
+			TreeFile.write(root, "SHA-256", size, attrs, this.file);
+
+			return root;
+		}
+	}
+
+	private void verifyRestore(int size) throws IOException {
+		final TreeRoot<byte[]> expected = save(size);
+		final TreeRoot<byte[]> root = TreeFile.read(this.tbld, "SHA-256", size, this.data, this.file);
+
+		assertThat(root, notNullValue());
+		assertThat(root.hash(), equalTo(expected.hash()));
+		assertThat(root.count(), equalTo(expected.count()));
+		assertThat(root.height(), equalTo(expected.height()));
+
+		for (int k = 0; k < root.count(); k++) {
+			final MappedSlice leaf = root.getLeaf(k);
+			final MappedSlice other = expected.getLeaf(k);
+
+			assertThat(leaf.getOffset(), equalTo(other.getOffset()));
+			assertThat(leaf.getContent(), equalTo(other.getContent()));
+			assertThat(leaf.hash(), equalTo(other.hash()));
+			assertThat(root.proof(k).size(), equalTo(expected.proof(k).size()));
+			assertThat(this.tbld.isValid(leaf.getChain(), k, root.count(), Arrays::equals), is(true));
+		}
+	}
+}
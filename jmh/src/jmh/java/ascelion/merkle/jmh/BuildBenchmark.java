@@ -0,0 +1,114 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle.jmh;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+import ascelion.merkle.help.DataSlice;
+import ascelion.merkle.help.DigestHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link TreeBuilder#build(TreeLeaf[])} for the available tree modes.
+ *
+ * <p>
+ * The leaves are created within each invocation, because a leaf cannot be shared between trees.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BuildBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	int count;
+
+	@Param({ "SHA-256", "SHA-1", "MD5" })
+	String algo;
+
+	private byte[][] hashes;
+	private TreeBuilder<byte[]> concat;
+	private TreeBuilder<byte[]> digest;
+	private TreeBuilder<byte[]> lazy;
+	private TreeBuilder<byte[]> compact;
+
+	@Setup
+	public void setUp() throws NoSuchAlgorithmException {
+		final DigestHash hash = new DigestHash(this.algo);
+		final Random rnd = new Random(this.count);
+
+		this.hashes = new byte[this.count][];
+
+		for (int k = 0; k < this.count; k++) {
+			final byte[] data = new byte[64];
+
+			rnd.nextBytes(data);
+
+			this.hashes[k] = hash.hash(data);
+		}
+
+		this.concat = new TreeBuilder<>(hash::hash, DataSlice::concat, new byte[0]);
+		this.digest = new TreeBuilder<>(hash, new byte[0]);
+		this.lazy = new TreeBuilder<>(hash, new byte[0]).lazy(true);
+		this.compact = new TreeBuilder<>(hash, new byte[0]).lazy(true).compact(true);
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> concat() {
+		return this.concat.build(leaves());
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> digest() {
+		return this.digest.build(leaves());
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> lazy() {
+		return this.lazy.build(leaves());
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> compact() {
+		return this.compact.build(leaves());
+	}
+
+	@SuppressWarnings("unchecked")
+	private TreeLeaf<byte[], ?>[] leaves() {
+		final TreeLeaf<byte[], ?>[] leaves = new TreeLeaf[this.count];
+
+		for (int k = 0; k < this.count; k++) {
+			leaves[k] = new TreeLeaf<>(this.hashes[k], null);
+		}
+
+		return leaves;
+	}
+}
@@ -0,0 +1,95 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeRoot;
+import ascelion.merkle.help.DataSlice;
+import ascelion.merkle.help.DigestHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link DataSlice#buildTree} over an input stream and over a byte channel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DataSliceBenchmark {
+
+	@Param({ "1024", "65536" })
+	int size;
+
+	@Param({ "SHA-256", "SHA-1", "MD5" })
+	String algo;
+
+	@Param({ "16777216" })
+	int length;
+
+	private byte[] data;
+	private Path file;
+	private TreeBuilder<byte[]> tbld;
+
+	@Setup
+	public void setUp() throws IOException, NoSuchAlgorithmException {
+		this.data = new byte[this.length];
+
+		new Random(this.length).nextBytes(this.data);
+
+		this.file = Files.createTempFile("merkle-", ".dat");
+
+		Files.write(this.file, this.data);
+
+		this.tbld = new TreeBuilder<>(new DigestHash(this.algo), new byte[0]);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> inputStream() throws IOException {
+		return DataSlice.buildTree(this.tbld, this.size, new ByteArrayInputStream(this.data));
+	}
+
+	@Benchmark
+	public TreeRoot<byte[]> byteChannel() throws IOException {
+		try (FileChannel chn = FileChannel.open(this.file, StandardOpenOption.READ)) {
+			return DataSlice.buildTree(this.tbld, this.size, chn);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+// Merkle Tree - a generic implementation of Merkle trees.
+//
+// Copyright (c) 2019 ASCELION
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+package ascelion.merkle.jmh;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ascelion.merkle.TreeBuilder;
+import ascelion.merkle.TreeLeaf;
+import ascelion.merkle.TreeRoot;
+import ascelion.merkle.help.DigestHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the leaf lookup, the proof generation and the chain validation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProofBenchmark {
+
+	@Param({ "1024", "1048576" })
+	int count;
+
+	@Param({ "SHA-256", "SHA-1", "MD5" })
+	String algo;
+
+	@Param({ "false", "true" })
+	boolean compact;
+
+	private TreeBuilder<byte[]> tbld;
+	private TreeRoot<byte[]> root;
+	private int index;
+
+	@Setup
+	public void setUp() throws NoSuchAlgorithmException {
+		final DigestHash hash = new DigestHash(this.algo);
+		final Random rnd = new Random(this.count);
+
+		this.tbld = new TreeBuilder<>(hash, new byte[0]).compact(this.compact);
+
+		for (int k = 0; k < this.count; k++) {
+			final byte[] data = new byte[64];
+
+			rnd.nextBytes(data);
+
+			this.tbld.collect(new TreeLeaf<>(hash.hash(data), data));
+		}
+
+		this.root = this.tbld.build();
+	}
+
+	@Benchmark
+	public TreeLeaf<byte[], ?> getLeaf() {
+		return this.root.getLeaf(next());
+	}
+
+	@Benchmark
+	public List<byte[]> proof() {
+		return this.root.proof(next());
+	}
+
+	@Benchmark
+	public boolean isValid() {
+		final int index = next();
+
+		return this.tbld.isValid(this.root.getLeaf(index).getChain(), index, Arrays::equals);
+	}
+
+	private int next() {
+		// walk the leaves with a stride to defeat the caches
+		this.index = (this.index + 7919) % this.count;
+
+		return this.index;
+	}
+}